@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats.benchmarks;
+
+import java.io.IOException;
+
+import org.apache.camel.component.nats.NatsTestServer;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks given on the command line (all of them by default) with the usual
+ * JMH options, the GC profiler always being enabled to report the allocation rate per operation.
+ *
+ * The benchmarks run against the embedded NATS test server of the forked JVM, unless a real
+ * server is given with -Dnats.servers=host:port.
+ */
+public final class NatsBenchmarks {
+
+    private static NatsTestServer server;
+
+    private NatsBenchmarks() {
+    }
+
+    /**
+     * The servers option of the benchmarked endpoints, starting the embedded server if needed.
+     */
+    public static synchronized String servers() throws IOException {
+        String servers = System.getProperty("nats.servers");
+        if (servers != null) {
+            return servers;
+        }
+        if (server == null) {
+            server = NatsTestServer.start();
+        }
+        return server.getServers();
+    }
+
+    /**
+     * The embedded server, null when benchmarking a real one
+     */
+    public static synchronized NatsTestServer embeddedServer() {
+        return server;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
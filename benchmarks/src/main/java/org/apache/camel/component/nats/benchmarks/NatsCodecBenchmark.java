@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.nats.client.Message;
+import io.nats.connector.CamelNatsAdapter;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.component.nats.NatsConsumer;
+import org.apache.camel.component.nats.NatsEndpoint;
+import org.apache.camel.component.nats.NatsMessage;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.util.ServiceHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A String body published through each built-in codec, "none" being the String path used
+ * without a codec, and the body of a received message read by the route, which decodes the
+ * payload itself with "none". Publishing uses flushPolicy=NEVER, so encoding and the buffered
+ * write are most of what is measured; receiving needs no server, as in NatsConsumerBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NatsCodecBenchmark {
+
+    @Param({"none", "raw", "utf8", "serialization"})
+    public String codec;
+
+    @Param({"128", "4096"})
+    public int payloadSize;
+
+    private CamelContext context;
+    private Endpoint endpoint;
+    private Producer producer;
+    private CamelNatsAdapter adapter;
+    private String text;
+    private Message message;
+    private Object received;
+
+    @Setup
+    public void setUp() throws Exception {
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, 'x');
+        text = new String(chars);
+        String codecOption = "none".equals(codec) ? "" : "&codec=" + codec;
+
+        context = new DefaultCamelContext();
+        context.start();
+        endpoint = context.getEndpoint("nats://" + NatsBenchmarks.servers() + "?topic=bench.codec&flushPolicy=NEVER" + codecOption);
+        producer = endpoint.createProducer();
+        ServiceHelper.startService(producer);
+
+        NatsEndpoint consumerEndpoint = context.getEndpoint("nats://localhost:4222?topic=bench.codec" + codecOption, NatsEndpoint.class);
+        NatsConsumer consumer = (NatsConsumer) consumerEndpoint.createConsumer(new Processor() {
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                // What a route does with the NATS message body when there is no codec
+                received = "none".equals(codec)
+                    ? new String(exchange.getIn(NatsMessage.class).getPayload(), StandardCharsets.UTF_8)
+                    : exchange.getIn().getBody();
+            }
+        });
+        adapter = new CamelNatsAdapter(consumer, consumerEndpoint.getNatsConfiguration().createProperties(),
+                LoggerFactory.getLogger(NatsCodecBenchmark.class));
+        message = new Message("bench.codec", null, payload());
+    }
+
+    private byte[] payload() throws Exception {
+        if (!"serialization".equals(codec)) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(text);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ServiceHelper.stopService(producer);
+        context.stop();
+    }
+
+    @Benchmark
+    public Exchange encode() throws Exception {
+        Exchange exchange = endpoint.createExchange();
+        exchange.getIn().setBody(text);
+        producer.process(exchange);
+        if (exchange.getException() != null) {
+            throw exchange.getException();
+        }
+        return exchange;
+    }
+
+    @Benchmark
+    public Object decode() {
+        adapter.onNATSMessage(message);
+        return received;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import io.nats.client.Message;
+import io.nats.connector.CamelNatsAdapter;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.nats.NatsConsumer;
+import org.apache.camel.component.nats.NatsEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CamelNatsAdapter.onNATSMessage turning a received message into an exchange and handing it
+ * to the route, here a processor reading its body (and headers). The adapter is not started,
+ * so no NATS server is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NatsConsumerBenchmark {
+
+    @Param({"16", "1024"})
+    public int payloadSize;
+
+    @Param({"false", "true"})
+    public boolean readHeaders;
+
+    private CamelContext context;
+    private CamelNatsAdapter adapter;
+    private Message message;
+    private Object received;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = new DefaultCamelContext();
+        context.start();
+        NatsEndpoint endpoint = context.getEndpoint("nats://localhost:4222?topic=bench.consumer", NatsEndpoint.class);
+        NatsConsumer consumer = (NatsConsumer) endpoint.createConsumer(new Processor() {
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                received = readHeaders ? exchange.getIn().getHeaders() : exchange.getIn().getBody();
+            }
+        });
+        adapter = new CamelNatsAdapter(consumer, endpoint.getNatsConfiguration().createProperties(),
+                LoggerFactory.getLogger(NatsConsumerBenchmark.class));
+        message = new Message("bench.consumer", null, new byte[payloadSize]);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    @Benchmark
+    public Object onNATSMessage() {
+        adapter.onNATSMessage(message);
+        return received;
+    }
+}
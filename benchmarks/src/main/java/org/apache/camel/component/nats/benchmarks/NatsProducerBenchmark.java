@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.util.ServiceHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * NatsProducer.process for each kind of body and flush policy. The exchange is processed
+ * synchronously, so with COUNT and INTERVAL each operation includes waiting for its flush.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NatsProducerBenchmark {
+
+    @Param({"STRING", "BYTES", "BYTE_BUFFER", "INPUT_STREAM"})
+    public String bodyType;
+
+    @Param({"ALWAYS", "COUNT", "INTERVAL", "NEVER"})
+    public String flushPolicy;
+
+    @Param({"128", "4096"})
+    public int payloadSize;
+
+    private CamelContext context;
+    private Endpoint endpoint;
+    private Producer producer;
+    private byte[] payload;
+    private String text;
+
+    @Setup
+    public void setUp() throws Exception {
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        text = new String(payload, StandardCharsets.UTF_8);
+
+        context = new DefaultCamelContext();
+        context.start();
+        endpoint = context.getEndpoint("nats://" + NatsBenchmarks.servers() + "?topic=bench.producer&flushPolicy=" + flushPolicy);
+        producer = endpoint.createProducer();
+        ServiceHelper.startService(producer);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ServiceHelper.stopService(producer);
+        context.stop();
+    }
+
+    @Benchmark
+    public Exchange process() throws Exception {
+        Exchange exchange = endpoint.createExchange();
+        exchange.getIn().setBody(body());
+        producer.process(exchange);
+        if (exchange.getException() != null) {
+            throw exchange.getException();
+        }
+        return exchange;
+    }
+
+    private Object body() {
+        switch (bodyType) {
+        case "STRING":
+            return text;
+        case "BYTE_BUFFER":
+            return ByteBuffer.wrap(payload);
+        case "INPUT_STREAM":
+            return new ByteArrayInputStream(payload);
+        default:
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.nats.NatsConsumer;
+import org.apache.camel.component.nats.NatsTestServer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for a route to deliver messages again once the embedded server dropped its
+ * connections: reconnection, resubscription and the first message going through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NatsReconnectBenchmark {
+
+    private CamelContext context;
+    private ProducerTemplate template;
+    private NatsTestServer server;
+    private NatsConsumer consumer;
+    private final AtomicLong received = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        final String servers = NatsBenchmarks.servers();
+        server = NatsBenchmarks.embeddedServer();
+        if (server == null) {
+            throw new IllegalStateException("Reconnections are only benchmarked with the embedded server");
+        }
+
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + servers + "?topic=bench.reconnect&reconnectTimeWait=10&maxReconnectAttempts=100");
+                from("nats://" + servers + "?topic=bench.reconnect&reconnectTimeWait=10&maxReconnectAttempts=100")
+                    .routeId("receive").process(new Processor() {
+                        @Override
+                        public void process(Exchange exchange) throws Exception {
+                            received.incrementAndGet();
+                        }
+                    });
+            }
+        });
+        context.start();
+        template = context.createProducerTemplate();
+        consumer = (NatsConsumer) context.getRoute("receive").getConsumer();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        template.stop();
+        context.stop();
+    }
+
+    @Benchmark
+    public long reconnect() throws Exception {
+        long reconnects = consumer.getReconnects();
+        long expected = received.get() + 1;
+        server.disconnectClients();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (consumer.getReconnects() == reconnects) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("The consumer did not reconnect");
+            }
+            Thread.sleep(1);
+        }
+        // Published until the resubscription reaches the server
+        while (received.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("No message received after the reconnection");
+            }
+            template.sendBody("direct:send", "ping");
+            Thread.sleep(1);
+        }
+        return received.get();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routes from a producer to a consumer through the NATS server: the throughput of one way
+ * messages, and the latency percentiles of request-reply round trips (sample mode).
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NatsRouteBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"128"})
+    public int payloadSize;
+
+    private CamelContext context;
+    private ProducerTemplate template;
+    private Endpoint oneWay;
+    private Endpoint request;
+    private byte[] payload;
+    private final AtomicLong received = new AtomicLong();
+    private long sent;
+
+    @Setup
+    public void setUp() throws Exception {
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+
+        final String servers = NatsBenchmarks.servers();
+        context = new DefaultCamelContext();
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("nats://" + servers + "?topic=bench.route").process(new Processor() {
+                    @Override
+                    public void process(Exchange exchange) throws Exception {
+                        received.incrementAndGet();
+                    }
+                });
+                from("nats://" + servers + "?topic=bench.rpc").transform(body());
+            }
+        });
+        context.start();
+        template = context.createProducerTemplate();
+        oneWay = context.getEndpoint("nats://" + servers + "?topic=bench.route&flushPolicy=NEVER");
+        request = context.getEndpoint("nats://" + servers + "?topic=bench.rpc&requestReply=true&requestTimeout=5000");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        template.stop();
+        context.stop();
+    }
+
+    /**
+     * Publishes a batch of messages then waits for the route to have received all of them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long throughput() throws Exception {
+        for (int i = 0; i < BATCH; i++) {
+            template.sendBody(oneWay, payload);
+        }
+        sent += BATCH;
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (received.get() < sent) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Received " + received.get() + " of " + sent + " messages");
+            }
+            Thread.yield();
+        }
+        return received.get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object roundTrip() throws Exception {
+        return template.requestBody(request, payload);
+    }
+}
@@ -1,16 +1,30 @@
 package io.nats.connector;
 
 import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.camel.Exchange;
-import org.apache.camel.component.nats.NatsConstants;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.component.nats.NatsBatcher;
+import org.apache.camel.component.nats.NatsChunkAssembler;
+import org.apache.camel.component.nats.NatsChunks;
+import org.apache.camel.component.nats.NatsCodec;
+import org.apache.camel.component.nats.NatsCompression;
+import org.apache.camel.component.nats.NatsCompressor;
+import org.apache.camel.component.nats.NatsConfiguration;
+import org.apache.camel.component.nats.NatsFlushPolicy;
+import org.apache.camel.component.nats.NatsLocalTag;
 import org.apache.camel.component.nats.NatsConsumer;
+import org.apache.camel.component.nats.NatsMessage;
+import org.apache.camel.component.nats.NatsMetrics;
 import org.apache.camel.component.nats.NatsProducer;
 import org.apache.camel.util.ObjectHelper;
 import org.slf4j.Logger;
 
 import io.nats.client.ConnectionEvent;
+import io.nats.client.Constants;
 import io.nats.client.Message;
+import io.nats.client.MessageHandler;
 import io.nats.client.NATSException;
 import io.nats.client.Subscription;
 
@@ -20,7 +34,16 @@ public class CamelNatsAdapter {
 	private Logger logger;	
 	private NatsConsumer natsConsumer = null;
 	private NatsProducer natsProducer = null;
-	private Subscription sid;
+	private NatsBatcher batcher = null;
+	private boolean replyToEnabled = false;
+	private Subscription replySubscription = null;
+	private NatsMetrics metrics;
+	private boolean localTags = false;
+	private NatsLocalEchoes localEchoes = null;
+	private boolean decompress = false;
+	private int decompressMaxSize;
+	private NatsCodec codec = null;
+	private NatsChunkAssembler chunkAssembler = null;
 	
 	enum AdapterType{
 		PRODUCER,
@@ -34,6 +57,20 @@ public class CamelNatsAdapter {
 		natsConnector = new NatsConnector(this, natsProperties, logger);
 		natsConnector.cloudEnvironment = 
 				natsConsumer.getEndpoint().getNatsConfiguration().isCloudEnvironment();
+		NatsConfiguration config = natsConsumer.getEndpoint().getNatsConfiguration();
+		batcher = natsConsumer.createBatcher();
+		metrics = natsConsumer.getMetrics();
+		replyToEnabled = !config.isDisableReplyTo();
+		decompress = config.getCompression() != NatsCompression.NONE;
+		decompressMaxSize = config.getCompressionMaxSize();
+		codec = config.getCodec();
+		chunkAssembler = natsConsumer.createChunkAssembler(this);
+		// Only consumers with localDelivery know about tagged payloads, others get them as sent
+		localTags = config.isLocalDelivery();
+		if (natsConsumer.isLocalDelivery()) {
+			localEchoes = new NatsLocalEchoes();
+		}
+		natsConnector.setPendingLimits(config.getPendingMessageLimit(), config.getPendingBytesLimit());
 		this.logger = logger;
 	}
 
@@ -44,40 +81,34 @@ public class CamelNatsAdapter {
 		this.natsConnector = new NatsConnector(this, natsProperties, logger);
 		natsConnector.cloudEnvironment = 
 				natsProducer.getEndpoint().getNatsConfiguration().isCloudEnvironment();
+		NatsConfiguration config = natsProducer.getEndpoint().getNatsConfiguration();
+		natsConnector.setFlushPolicy(config.getFlushPolicy(), config.getFlushBatchSize(), config.getFlushInterval());
+		metrics = natsProducer.getMetrics();
+		natsConnector.setFlushLatency(metrics.getFlushLatency());
 	}
 	
 	public boolean onNatsInitialized() {	
 		
 		if(adapterType == AdapterType.PRODUCER){
 			logger.debug("Received NATS producer onInitialized event");
-			if (natsProducer.getStartupLatch() != null)
-				natsProducer.getStartupLatch().countDown();
 		}
 		else if(adapterType == AdapterType.CONSUMER){
 			logger.debug("Received NATS consumer onInitialized event");
 			subscribe();	        
-	        if (natsConsumer.getStartupLatch() != null)
-	        	natsConsumer.getStartupLatch().countDown();
 		}			
 	    return true;
 	}
 	
 	private void subscribe(){
+		  NatsConfiguration config = natsConsumer.getEndpoint().getNatsConfiguration();
 		  try
 	        {
-	        	if (ObjectHelper.isNotEmpty(natsConsumer.getEndpoint().getNatsConfiguration().getQueueName())) {
-	        		natsConnector.subscribe(natsConsumer.getEndpoint().getNatsConfiguration().getTopic(),
-	        				natsConsumer.getEndpoint().getNatsConfiguration().getQueueName());
-	        		if (ObjectHelper.isNotEmpty(natsConsumer.getEndpoint().getNatsConfiguration().getMaxMessages())) {
-	        			natsConnector.autoUnsubscribe(natsConsumer.getEndpoint().getNatsConfiguration().getTopic(),
-	        					Integer.parseInt(natsConsumer.getEndpoint().getNatsConfiguration().getMaxMessages()));
-	        		}
-	        	}
-	        	else{
-	        		natsConnector.subscribe(natsConsumer.getEndpoint().getNatsConfiguration().getTopic());
-	        		if (ObjectHelper.isNotEmpty(natsConsumer.getEndpoint().getNatsConfiguration().getMaxMessages())) {
-	        			natsConnector.autoUnsubscribe(natsConsumer.getEndpoint().getNatsConfiguration().getTopic(),
-	        					Integer.parseInt(natsConsumer.getEndpoint().getNatsConfiguration().getMaxMessages()));
+	        	String queue = ObjectHelper.isNotEmpty(config.getQueueName()) ? config.getQueueName() : null;
+	        	// All the subjects of the topic are multiplexed on this connection
+	        	for (String subject : config.getSubjects()) {
+	        		natsConnector.subscribe(subject, queue);
+	        		if (ObjectHelper.isNotEmpty(config.getMaxMessages())) {
+	        			natsConnector.autoUnsubscribe(subject, Integer.parseInt(config.getMaxMessages()));
 	        		}
 	        	}
 	        }
@@ -89,29 +120,82 @@ public class CamelNatsAdapter {
 	
 	public void onNATSMessage(Message msg) {
 				
-		logger.debug("Received NATS message: " + msg.toString());
+		if (logger.isTraceEnabled() && natsConsumer.getLogSampler().sample()) {
+			logger.trace("Received NATS message on {} ({} bytes, reply to {})", msg.getSubject(),
+					msg.getData() == null ? 0 : msg.getData().length, msg.getReplyTo());
+		}
+		
+		if (localTags && NatsLocalTag.isTagged(msg.getData())) {
+			byte[] data = msg.getData();
+			boolean echo = localEchoes != null
+					&& localEchoes.isEcho(NatsLocalTag.origin(data), NatsLocalTag.sequence(data));
+			if (echo) {
+				return;
+			}
+			NatsLocalTag.strip(msg);
+		}
+		deliver(msg, null);
+	}
+
+	/**
+	 * Receives a message published by a producer of the same component with localDelivery,
+	 * its copy coming back from the server being dropped.
+	 */
+	public void onLocalMessage(String subscriptionSubject, String subject, String replyTo, byte[] payload) {
+		deliver(new Message(subject, replyTo, payload), subscriptionSubject);
+	}
+
+	/**
+	 * Lets the adapter know that the tagged message about to be published is also delivered
+	 * to it locally.
+	 */
+	public void expectEcho(long origin, long sequence) {
+		localEchoes.expect(origin, sequence);
+	}
+
+	/**
+	 * Forgets an expected copy, the message not having been published.
+	 */
+	public void cancelEcho(long sequence) {
+		localEchoes.cancel(sequence);
+	}
+
+	private void deliver(Message msg, String subscriptionSubject) {
+		metrics.onReceived(msg.getData() == null ? 0 : msg.getData().length);
+		if (chunkAssembler != null && NatsChunks.isChunk(msg.getData())) {
+			chunkAssembler.add(msg, subscriptionSubject);
+			return;
+		}
+		boolean compressed = decompress && NatsCompressor.isCompressed(msg.getData());
+		if (compressed && NatsCompressor.originalLength(msg.getData()) > decompressMaxSize) {
+			natsConsumer.getExceptionHandler().handleException("Compressed NATS payload on " + msg.getSubject()
+					+ " dropped, decompressing to more than " + decompressMaxSize + " bytes",
+					new RuntimeCamelException("Compressed NATS payload larger than compressionMaxSize"));
+			return;
+		}
+		if (batcher != null) {
+			if (compressed) {
+				try {
+					NatsCompressor.decompress(msg);
+				} catch (RuntimeCamelException e) {
+					natsConsumer.getExceptionHandler().handleException("Unable to decompress the NATS payload", e);
+					return;
+				}
+			}
+			batcher.add(msg, System.currentTimeMillis());
+			return;
+		}
 		
 		Exchange exchange = natsConsumer.getEndpoint().createExchange();
-        exchange.getIn().setBody(msg);
-        exchange.getIn().setHeader(NatsConstants.NATS_MESSAGE_TIMESTAMP, System.currentTimeMillis());
-        exchange.getIn().setHeader(NatsConstants.NATS_SUBSCRIPTION_ID, sid);
-        try {
-       	 natsConsumer.getProcessor().process(exchange);
-        } catch (Exception e) {
-       	 natsConsumer.getExceptionHandler().handleException("Error during processing", exchange, e);
-        }	
+        exchange.setIn(new NatsMessage(msg, System.currentTimeMillis(), subscriptionSubject, compressed, codec));
+        if (replyToEnabled && msg.getReplyTo() != null) {
+        	natsConsumer.prepareReply(exchange, this, msg.getReplyTo());
+        }
+        natsConsumer.dispatch(exchange);
 	}
 
 	void onClose(ConnectionEvent event) {
-		
-		if(adapterType == AdapterType.PRODUCER){	    	     
-			if(natsProducer.getShutdownLatch() != null)
-				natsProducer.getShutdownLatch().countDown();
-		 }
-		else if(adapterType == AdapterType.CONSUMER){	    	     
-			if(natsConsumer.getShutdownLatch() != null)
-				natsConsumer.getShutdownLatch().countDown();
-		 }			
+		logger.debug("Adapter connection closed");
 	}
 
 	public void onShutdown() {	
@@ -121,35 +205,77 @@ public class CamelNatsAdapter {
 	     
 	     if(adapterType == AdapterType.CONSUMER){	
 	    	 logger.debug("Shutting down NatsConnector (Consumer)");
-		     try {
-		    	 natsConnector.unsubscribe(natsConsumer.getEndpoint().getNatsConfiguration().getTopic());
-		     } catch (Exception e) {
-		    	 natsConsumer.getExceptionHandler().handleException("Error during unsubscribing", e);
-		     }	
+		     for (String subject : natsConsumer.getEndpoint().getNatsConfiguration().getSubjects()) {
+			     try {
+			    	 natsConnector.unsubscribe(subject);
+			     } catch (Exception e) {
+			    	 natsConsumer.getExceptionHandler().handleException("Error during unsubscribing", e);
+			     }
+		     }
 	     }
 	     else if(adapterType == AdapterType.PRODUCER){	    	        
 	    	 logger.debug("Shutting down NatsConnector (Producer): ");
+	    	 unsubscribeReplies();
 	     }
 	}
 
 	public void publish(String subject, String replySubject, byte[] payload) throws Exception {
+		publish(subject, replySubject, payload, null);
+	}
+
+	/**
+	 * Publishes the payload, the listener being notified once the flush policy has
+	 * flushed it to the server.
+	 */
+	public void publish(String subject, String replySubject, byte[] payload, NatsFlushListener listener) throws Exception {
+		write(subject, replySubject, payload);
+		flushWritten(1, listener);
+	}
+
+	/**
+	 * Writes the payload to the connection without flushing it, several writes then
+	 * being covered by a single {@link #flushWritten(int, NatsFlushListener)}.
+	 */
+	public void write(String subject, String replySubject, byte[] payload) throws Exception {
 		if (natsConnector == null){
 			logger.error("NATS connection is not initialized");
 		    throw new Exception("Invalid State Nats Connector is null");
 		}      
 		
-		Message m = new Message();
-		m.setSubject(subject);
-	        
-		if (replySubject != null)
-	        m.setReplyTo(replySubject);
-	        
-		m.setData(payload, 0, payload.length);
-	
-		natsConnector.publish(m);
-	
+		natsConnector.publish(subject, replySubject, payload);
+	}
+
+	/**
+	 * The largest payload the server accepts
+	 */
+	public long getMaxPayload() {
+		return natsConnector.getMaxPayload();
+	}
+
+	/**
+	 * Subscribes the handler to every subject of a new inbox, returning the inbox
+	 * (without the trailing wildcard) to which requests get their replies.
+	 */
+	public synchronized String subscribeReplies(MessageHandler handler) throws Exception {
+		String inbox = natsConnector.newInbox();
+		replySubscription = natsConnector.subscribeHandler(inbox + ".*", handler);
+		return inbox;
+	}
+
+	private synchronized void unsubscribeReplies() {
+		if (replySubscription == null)
+			return;
 		try {
-			natsConnector.flush();
+			replySubscription.unsubscribe();
+		} catch (Exception e) {
+			logger.debug("Unable to unsubscribe from the reply inbox", e);
+		}
+		replySubscription = null;
+	}
+
+	public void flushWritten(int count, NatsFlushListener listener) throws Exception {
+		try {
+			natsConnector.flushPublished(count, listener);
 	    }
 	    catch (Exception e){
 	       	logger.error("Error with flush:  ");
@@ -159,6 +285,7 @@ public class CamelNatsAdapter {
 
 	public void onReconnect(ConnectionEvent event) {
 	 	logger.debug("Adapter Reconnected ", event.toString());		
+	 	metrics.onReconnect();
 	}
 
 	public void onException(NATSException ex) {
@@ -168,13 +295,22 @@ public class CamelNatsAdapter {
 		if(adapterType == AdapterType.PRODUCER){	    	     
 			// Need to notify camel framework here
 		 }
-		else if(adapterType == AdapterType.CONSUMER){	    	     
+		else if(adapterType == AdapterType.CONSUMER){
+			Subscription sub = ex.getSubscription();
+			if (sub != null && ex.getCause() != null
+					&& Constants.ERR_SLOW_CONSUMER.equals(ex.getCause().getMessage())) {
+				metrics.onSlowConsumer();
+				natsConsumer.getExceptionHandler().handleException(
+						"Slow consumer on subject " + sub.getSubject() + ", messages dropped", ex);
+				return;
+			}
 			natsConsumer.getExceptionHandler().handleException("Error during processing", ex);
 		 }			
 
 	}
 
 	public void onDisconnect(ConnectionEvent event) {
+		metrics.onDisconnect();
 		
 		if(adapterType == AdapterType.PRODUCER){	
 			logger.debug("Producer Disconnected ", event.toString());	
@@ -212,12 +348,40 @@ public class CamelNatsAdapter {
 		
 	}
 
+	/**
+	 * Connects (and subscribes for a consumer) on the calling thread.
+	 */
+	public void start() throws Exception {
+		this.natsConnector.connect();
+	}
+
 	public void shutdown() {
 		this.natsConnector.shutdown();		
 	}
 
-	public Runnable getConnector() {		
-		return natsConnector;
-	}		
+	public NatsFlushPolicy getFlushPolicy() {
+		return natsConnector.getFlushPolicy();
+	}
+
+	public void setConnectionRegistry(NatsConnectionRegistry registry, int slot) {
+		natsConnector.setConnectionRegistry(registry, slot);
+	}
+
+	public int getPendingMessages() {
+		return natsConnector.getPendingMessages();
+	}
+
+	public int getPendingMessages(String subject) {
+		return natsConnector.getPendingMessages(subject);
+	}
+
+	public long getDroppedMessages() {
+		return natsConnector.getDroppedMessages();
+	}
+
+	public void startFlusher(ScheduledExecutorService executor) {
+		natsConnector.startFlusher(executor);
+	}
+		
 }
 
@@ -0,0 +1,137 @@
+package io.nats.connector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.nats.client.ClosedCallback;
+import io.nats.client.Connection;
+import io.nats.client.ConnectionEvent;
+import io.nats.client.ConnectionFactory;
+import io.nats.client.DisconnectedCallback;
+import io.nats.client.ExceptionHandler;
+import io.nats.client.NATSException;
+import io.nats.client.ReconnectedCallback;
+
+/**
+ * Shares NATS connections between the connectors having identical connection settings.
+ *
+ * A connection is opened by the first connector acquiring it and closed when the last one
+ * releases it. Connectors ask for a slot, so that a pool of N connectors still gets N
+ * connections while every endpoint's slot 0 ends up on the same one.
+ */
+public class NatsConnectionRegistry {
+
+    private final Map<String, SharedConnection> connections = new HashMap<String, SharedConnection>();
+
+    /**
+     * Number of connections currently open through this registry
+     */
+    public synchronized int getConnectionCount() {
+        return connections.size();
+    }
+
+    SharedConnection acquire(Properties properties, int slot, NatsConnector connector) throws Exception {
+        String key = new TreeMap<Object, Object>(properties).toString() + "#" + slot;
+        SharedConnection shared;
+        synchronized (this) {
+            shared = connections.get(key);
+            if (shared == null) {
+                shared = new SharedConnection(key);
+                connections.put(key, shared);
+            }
+            shared.references++;
+        }
+
+        // Only the connectors of the same key wait for the handshake
+        synchronized (shared) {
+            if (shared.connection == null) {
+                try {
+                    ConnectionFactory connectionFactory = new ConnectionFactory(properties);
+                    connectionFactory.setClosedCallback(shared);
+                    connectionFactory.setDisconnectedCallback(shared);
+                    connectionFactory.setExceptionHandler(shared);
+                    connectionFactory.setReconnectedCallback(shared);
+                    shared.connection = connectionFactory.createConnection();
+                } catch (Exception e) {
+                    release(shared, connector);
+                    throw e;
+                }
+            }
+            shared.connectors.add(connector);
+            return shared;
+        }
+    }
+
+    void release(SharedConnection shared, NatsConnector connector) {
+        boolean close = false;
+        synchronized (this) {
+            shared.connectors.remove(connector);
+            if (--shared.references == 0) {
+                connections.remove(shared.key);
+                close = true;
+            }
+        }
+
+        if (close) {
+            synchronized (shared) {
+                if (shared.connection != null) {
+                    shared.connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A connection and the connectors using it, its events being forwarded to each of them.
+     */
+    static class SharedConnection implements ClosedCallback, DisconnectedCallback,
+            ExceptionHandler, ReconnectedCallback {
+
+        private final String key;
+        private final CopyOnWriteArrayList<NatsConnector> connectors = new CopyOnWriteArrayList<NatsConnector>();
+        private int references;
+        private volatile Connection connection;
+
+        SharedConnection(String key) {
+            this.key = key;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        @Override
+        public void onReconnect(ConnectionEvent event) {
+            for (NatsConnector connector : connectors) {
+                connector.getEventHandlers().onReconnect(event);
+            }
+        }
+
+        @Override
+        public void onClose(ConnectionEvent event) {
+            for (NatsConnector connector : connectors) {
+                connector.getEventHandlers().onClose(event);
+            }
+        }
+
+        @Override
+        public void onDisconnect(ConnectionEvent event) {
+            for (NatsConnector connector : connectors) {
+                connector.getEventHandlers().onDisconnect(event);
+            }
+        }
+
+        @Override
+        public void onException(NATSException ex) {
+            // Subscription errors (slow consumer...) only concern the connector which subscribed
+            for (NatsConnector connector : connectors) {
+                if (ex.getSubscription() == null || connector.ownsSubscription(ex.getSubscription())) {
+                    connector.getEventHandlers().onException(ex);
+                }
+            }
+        }
+    }
+}
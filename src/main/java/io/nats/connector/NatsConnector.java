@@ -5,14 +5,19 @@ package io.nats.connector;
 import io.nats.client.*;
 import io.nats.client.Constants.ConnState;
 
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
 
+import org.apache.camel.component.nats.NatsFlushPolicy;
+import org.apache.camel.component.nats.NatsLatencyHistogram;
 import org.slf4j.Logger;
 
-public class NatsConnector implements MessageHandler, Runnable {
+public class NatsConnector implements MessageHandler {
 
     private CamelNatsAdapter 	camelNatsAdapter = null;
-    private AsyncSubscription     	subscription = null;
+    private final Map<String, AsyncSubscription> subscriptions = new ConcurrentHashMap<String, AsyncSubscription>();
     private Properties       	properties = null;
     
     private Logger            	logger     = null;
@@ -20,15 +25,110 @@ public class NatsConnector implements MessageHandler, Runnable {
 
     private ConnectionFactory 	connectionFactory = null;
     private Connection        	connection        = null;
-	private Object 				threadLock        = null;
 	public boolean 			cloudEnvironment = false;
+	private NatsFlusher 		flusher           = null;
+	private EventHandlers 		eventHandlers     = new EventHandlers();
+	private NatsConnectionRegistry registry       = null;
+	private int 				registrySlot      = 0;
+	private NatsConnectionRegistry.SharedConnection sharedConnection = null;
+	private int 				pendingMessageLimit = 0;
+	private int 				pendingBytesLimit = 0;
+	private NatsLatencyHistogram flushLatency = null;
 
     public NatsConnector(CamelNatsAdapter adapter, Properties props, Logger logger)
     {
         this.camelNatsAdapter = adapter;
         this.properties = props;
         this.logger = logger;
-        this.threadLock = new Object();
+        this.flusher = new NatsFlusher(this, NatsFlushPolicy.ALWAYS, 1, 1, logger);
+    }
+
+    public void setFlushPolicy(NatsFlushPolicy policy, int batchSize, long interval)
+    {
+        this.flusher = new NatsFlusher(this, policy, batchSize, interval, logger);
+    }
+
+    public NatsFlushPolicy getFlushPolicy()
+    {
+        return flusher.getPolicy();
+    }
+
+    public void startFlusher(ScheduledExecutorService executor)
+    {
+        flusher.start(executor);
+    }
+
+    /**
+     * Takes the connection of the given slot from the registry instead of opening one
+     * of its own. Not used in cloud environments, where the connector reconnects itself.
+     */
+    public void setConnectionRegistry(NatsConnectionRegistry registry, int slot)
+    {
+        this.registry = registry;
+        this.registrySlot = slot;
+    }
+
+    /**
+     * Limits of the messages received but not yet handled by each subscription, 0 or less
+     * meaning no limit. Reaching them drops the next messages, reported as a slow consumer.
+     */
+    public void setPendingLimits(int messages, int bytes)
+    {
+        this.pendingMessageLimit = messages;
+        this.pendingBytesLimit = bytes;
+    }
+
+    /**
+     * Messages received by the subscriptions and not handled yet
+     */
+    public int getPendingMessages()
+    {
+        int pending = 0;
+        for (AsyncSubscription sub : subscriptions.values()) {
+            if (sub.isValid())
+                pending += sub.getPendingMsgs();
+        }
+        return pending;
+    }
+
+    /**
+     * Messages received by the subscription to the given subject and not handled yet
+     */
+    public int getPendingMessages(String subject)
+    {
+        AsyncSubscription sub = subscriptions.get(subject);
+        return sub == null || !sub.isValid() ? 0 : sub.getPendingMsgs();
+    }
+
+    /**
+     * Messages dropped by the subscriptions because of their pending limits
+     */
+    public long getDroppedMessages()
+    {
+        long dropped = 0;
+        for (AsyncSubscription sub : subscriptions.values()) {
+            if (sub.isValid())
+                dropped += sub.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * Records how long each flush takes
+     */
+    public void setFlushLatency(NatsLatencyHistogram flushLatency)
+    {
+        this.flushLatency = flushLatency;
+    }
+
+    EventHandlers getEventHandlers()
+    {
+        return eventHandlers;
+    }
+
+    boolean ownsSubscription(Subscription sub)
+    {
+        return sub != null && subscriptions.get(sub.getSubject()) == sub;
     }
 
     class EventHandlers implements ClosedCallback, DisconnectedCallback,
@@ -61,8 +161,10 @@ public class NatsConnector implements MessageHandler, Runnable {
         }
     }
 
-    @Override
-    public void run()
+    /**
+     * Connects to NATS and lets the adapter subscribe, all on the calling thread.
+     */
+    public void connect() throws Exception
     {
         logger.debug("Setting up NATS Connector.");
 
@@ -73,29 +175,12 @@ public class NatsConnector implements MessageHandler, Runnable {
             logger.error("Setup error: " + e.getMessage());
             logger.debug("Exception: ", e);
             disconnectFromNats();
-            return;
+            throw e;
         }
-        
-        camelNatsAdapter.onNatsInitialized();
-            
+
         running = true;
 
-        while (running)
-        {
-            logger.debug("The NATS Connector is running.");
-            synchronized(threadLock)
-            {
-            	try {
-            		threadLock.wait();
-            	}
-            	catch (InterruptedException e) {
-                      
-            	}
-            }       
-        }
-        logger.debug("The NATS Connector is exiting.");
-        
-        disconnectFromNats();
+        camelNatsAdapter.onNatsInitialized();
     }
     
     public void shutdown()
@@ -103,20 +188,25 @@ public class NatsConnector implements MessageHandler, Runnable {
     	if (!running)
             return;
     	
+    	flusher.stop();
       	running = false;
-    	
-        synchronized (threadLock )
-        {
-            threadLock.notifyAll();
-        }
 
     	logger.debug("Shutting down NatsConnector");
+
+        disconnectFromNats();
     }
     
     private void connectToNats() throws Exception
     {
+        if (registry != null && !cloudEnvironment) {
+            sharedConnection = registry.acquire(properties, registrySlot, this);
+            connection = sharedConnection.getConnection();
+            logger.debug("Connected to NATS cluster (shared connection).");
+            return;
+        }
+
         connectionFactory = new ConnectionFactory(properties);
-        EventHandlers eh = new EventHandlers();
+        EventHandlers eh = eventHandlers;
         connectionFactory.setClosedCallback(eh);
         connectionFactory.setDisconnectedCallback(eh);
         connectionFactory.setExceptionHandler(eh);
@@ -133,9 +223,7 @@ public class NatsConnector implements MessageHandler, Runnable {
         //connectionFactory.setServers("nats://127.0.0.1:4333");
         connectionFactory.setServers(servers);
        
-        if (subscription != null){
-        	subscription = null;
-        }
+        subscriptions.clear();
      
         connection = connectionFactory.createConnection();
         logger.debug("Reconnected to URL :" + servers);
@@ -145,6 +233,15 @@ public class NatsConnector implements MessageHandler, Runnable {
     {
     	camelNatsAdapter.onShutdown();
 
+        if (sharedConnection != null) {
+            registry.release(sharedConnection, this);
+            sharedConnection = null;
+            // The connection may still be used by others, so no close event to wait for
+            camelNatsAdapter.onClose(null);
+            logger.debug("Released shared connection to NATS cluster.");
+            return;
+        }
+
         try
         {
             if (connection != null)
@@ -157,8 +254,6 @@ public class NatsConnector implements MessageHandler, Runnable {
 
     public void onMessage(Message m)
     {
-        logger.debug("Received Message:" + m.toString());
-        
         try
         {
             camelNatsAdapter.onNATSMessage(m);
@@ -169,28 +264,78 @@ public class NatsConnector implements MessageHandler, Runnable {
         }
     }
 
-    public void publish(Message msg)
+    /**
+     * Publishes the message, failing when the connector is not running or the server does not
+     * take it (payload larger than its max_payload, connection closed...).
+     */
+    public void publish(Message msg) throws Exception
     {
         if (!running)
-          return;
+            throw new IllegalStateException("NATS connector is not running, unable to publish to " + msg.getSubject());
 
         try {
             connection.publish(msg);
         }
         catch (Exception ex) {
-            logger.error("Exception publishing: " + ex.getMessage());
-            logger.debug("Exception: " + ex);
+            throw new Exception("Unable to publish to NATS subject " + msg.getSubject(), ex);
         }
     }
 
+    /**
+     * Publishes the payload as is, contrary to {@link #publish(Message)} which copies it.
+     */
+    public void publish(String subject, String replySubject, byte[] payload) throws Exception
+    {
+        if (!running)
+            throw new IllegalStateException("NATS connector is not running, unable to publish to " + subject);
+
+        try {
+            connection.publish(subject, replySubject, payload);
+        }
+        catch (Exception ex) {
+            throw new Exception("Unable to publish " + payload.length + " bytes to NATS subject " + subject, ex);
+        }
+    }
+
+    /**
+     * The largest payload the server accepts, as announced when connecting
+     */
+    public long getMaxPayload()
+    {
+        return connection.getMaxPayload();
+    }
+
+    /**
+     * Lets the flush policy know that messages have been published, flushing them
+     * right away or leaving it to the background flusher.
+     */
+    public void flushPublished(int count) throws Exception
+    {
+        flusher.onPublish(count, null);
+    }
+
+    /**
+     * Same as {@link #flushPublished(int)}, the listener being notified once the
+     * messages have been confirmed by the server.
+     */
+    public void flushPublished(int count, NatsFlushListener listener) throws Exception
+    {
+        flusher.onPublish(count, listener);
+    }
+
+    /**
+     * Flushes the connection, failing when the connector is not running so that nothing is
+     * taken for flushed when it was not.
+     */
     public void flush() throws Exception
     {
         if ( !running )
-            return;
+            throw new IllegalStateException("NATS connector is not running, unable to flush");
 
         if (connection == null)
             throw new Exception("Invalid state.  Connection is null.");
 
+        long start = System.nanoTime();
         try {
             connection.flush();
         }
@@ -198,6 +343,26 @@ public class NatsConnector implements MessageHandler, Runnable {
         {
             throw new Exception("Unable to flush NATS connection.", ex);
         }
+        if (flushLatency != null)
+            flushLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * A unique inbox subject of this connection, to receive replies on
+     */
+    public String newInbox()
+    {
+        return connection.newInbox();
+    }
+
+    /**
+     * Subscribes the handler on its own, besides the subscription of a consumer. It is up to
+     * the caller to unsubscribe, the connection being possibly shared.
+     */
+    public Subscription subscribeHandler(String subject, MessageHandler handler) throws Exception
+    {
+        // Unlike the deprecated subscribeAsync, delivery starts right away
+        return connection.subscribe(subject, handler);
     }
 
     public void subscribe(String subject) throws Exception
@@ -212,14 +377,11 @@ public class NatsConnector implements MessageHandler, Runnable {
     
         logger.debug("Plugin unsubscribe after max num of messages from '{}'.", subject);
 
+        AsyncSubscription subscription = subscriptions.get(subject);
         if (subscription == null) {
             logger.debug("Subscription not found.");
             return;
         }
-        else if(!subscription.getSubject().equalsIgnoreCase(subject)){
-            logger.debug("Subscription not found.");
-            return;
-        }
         else{
 	        try {
 	        	subscription.autoUnsubscribe(max);
@@ -235,17 +397,23 @@ public class NatsConnector implements MessageHandler, Runnable {
         if (subject == null)
             return;
         
-        if (subscription != null && subscription.getSubject().equalsIgnoreCase(subject)) {
+        if (subscriptions.containsKey(subject)) {
             logger.debug("Subscription already exists.");
             return;
         }
 
+        AsyncSubscription sub;
         if (queue == null)
-            subscription = connection.subscribeAsync(subject, handler);
+            sub = connection.subscribeAsync(subject, handler);
         else
-        	subscription = connection.subscribeAsync(subject, queue, handler);
+        	sub = connection.subscribeAsync(subject, queue, handler);
+
+        // The client takes a negative limit as no limit and refuses 0
+        sub.setPendingLimits(pendingMessageLimit > 0 ? pendingMessageLimit : -1,
+                pendingBytesLimit > 0 ? pendingBytesLimit : -1);
 
-        subscription.start();        
+        subscriptions.put(subject, sub);
+        sub.start();
     }
 
     public void subscribe(String subject, String queue) throws Exception {
@@ -256,7 +424,8 @@ public class NatsConnector implements MessageHandler, Runnable {
     {
             
     	logger.debug("Plugin unsubscribe from '{}'.", subject);
-    	if (subscription == null || !subscription.getSubject().equalsIgnoreCase(subject)) {
+    	AsyncSubscription subscription = subscriptions.remove(subject);
+    	if (subscription == null) {
             logger.debug("Subscription not found.");
             return;
         }
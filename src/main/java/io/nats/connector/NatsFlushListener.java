@@ -0,0 +1,12 @@
+package io.nats.connector;
+
+/**
+ * Notified once the server has confirmed, through a flush, the messages published before it.
+ */
+public interface NatsFlushListener {
+
+    /**
+     * @param cause null when the flush succeeded, the failure otherwise
+     */
+    void onFlush(Exception cause);
+}
@@ -0,0 +1,154 @@
+package io.nats.connector;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.component.nats.NatsFlushPolicy;
+import org.slf4j.Logger;
+
+/**
+ * Decides when the messages published through a {@link NatsConnector} get flushed.
+ *
+ * With the ALWAYS policy every publish is followed by a flush on the calling thread.
+ * With COUNT and INTERVAL the flush is run on a background executor, so publishing
+ * is just a buffered write and one PING/PONG round trip is shared by many messages.
+ * With COUNT the interval still bounds how long a partial batch waits for its flush.
+ * Listeners registered with a publish are notified once the flush covering it returns.
+ */
+class NatsFlusher implements Runnable {
+
+    private final NatsConnector connector;
+    private final NatsFlushPolicy policy;
+    private final int batchSize;
+    private final long interval;
+    private final Logger logger;
+
+    private final AtomicLong unflushed = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<NatsFlushListener> listeners = new ConcurrentLinkedQueue<NatsFlushListener>();
+
+    private ScheduledExecutorService executor = null;
+    private ScheduledFuture<?> intervalTask = null;
+
+    NatsFlusher(NatsConnector connector, NatsFlushPolicy policy, int batchSize, long interval, Logger logger)
+    {
+        this.connector = connector;
+        this.policy = policy == null ? NatsFlushPolicy.ALWAYS : policy;
+        this.batchSize = Math.max(1, batchSize);
+        this.interval = Math.max(1, interval);
+        this.logger = logger;
+    }
+
+    NatsFlushPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    void start(ScheduledExecutorService executor)
+    {
+        this.executor = executor;
+
+        if ((policy == NatsFlushPolicy.INTERVAL || policy == NatsFlushPolicy.COUNT) && executor != null)
+            intervalTask = executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Called once the given number of messages have been written to the connection.
+     * The listener, if any, is notified when those messages have been flushed.
+     */
+    void onPublish(int count, NatsFlushListener listener) throws Exception
+    {
+        if (listener != null && (policy == NatsFlushPolicy.COUNT || policy == NatsFlushPolicy.INTERVAL))
+            listeners.add(listener);
+
+        switch (policy) {
+        case ALWAYS:
+            try {
+                connector.flush();
+            }
+            catch (Exception e) {
+                if (listener == null)
+                    throw e;
+                listener.onFlush(e);
+                return;
+            }
+            if (listener != null)
+                listener.onFlush(null);
+            break;
+        case NEVER:
+            unflushed.addAndGet(count);
+            if (listener != null)
+                listener.onFlush(null);
+            break;
+        case COUNT:
+            if (unflushed.addAndGet(count) >= batchSize)
+                scheduleFlush();
+            break;
+        default:
+            unflushed.addAndGet(count);
+            break;
+        }
+    }
+
+    private void scheduleFlush()
+    {
+        if (executor == null) {
+            run();
+            return;
+        }
+
+        if (flushScheduled.compareAndSet(false, true))
+            executor.execute(this);
+    }
+
+    @Override
+    public void run()
+    {
+        flushScheduled.set(false);
+
+        if (unflushed.getAndSet(0) == 0)
+            return;
+
+        // Only the listeners registered so far are covered by this flush
+        int waiting = listeners.size();
+        Exception cause = null;
+        try {
+            connector.flush();
+        }
+        catch (Exception e) {
+            logger.error("Background flush failed: {}", e.getMessage());
+            logger.debug("Exception: ", e);
+            cause = e;
+        }
+
+        for (int i = 0; i < waiting; i++) {
+            NatsFlushListener listener = listeners.poll();
+            if (listener == null)
+                break;
+            try {
+                listener.onFlush(cause);
+            }
+            catch (Exception e) {
+                logger.error("Flush listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the background flushes and flushes whatever is still pending.
+     */
+    void stop()
+    {
+        if (intervalTask != null) {
+            intervalTask.cancel(false);
+            intervalTask = null;
+        }
+        executor = null;
+
+        run();
+    }
+}
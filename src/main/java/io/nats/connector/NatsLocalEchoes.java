@@ -0,0 +1,59 @@
+package io.nats.connector;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The messages a consumer already got through local delivery, whose copies coming back from
+ * the server are to be dropped. jnats having no way to ask the server not to echo, the producer
+ * tags such messages with the id of its component and a sequence number (see NatsLocalTag),
+ * which is all that is kept here: an untagged message, or one tagged by another component,
+ * is never taken for an echo whatever its content.
+ *
+ * Copies which never come back (the subscription being down meanwhile) are forgotten after
+ * MAX_AGE milliseconds, whatever the number of messages in flight, a copy coming back later
+ * being delivered again. Entries holding no payload (about 100 bytes each), the memory is
+ * that of the messages delivered locally during MAX_AGE.
+ */
+class NatsLocalEchoes {
+
+    static final long MAX_AGE = 60000;
+
+    // Sequence numbers, in the order they were expected, and when they were
+    private final LinkedHashMap<Long, Long> expected = new LinkedHashMap<Long, Long>();
+    private long origin;
+
+    synchronized void expect(long origin, long sequence) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        this.origin = origin;
+        expected.put(sequence, now);
+    }
+
+    /**
+     * Forgets a message which could not be published after all.
+     */
+    synchronized void cancel(long sequence) {
+        expected.remove(sequence);
+    }
+
+    /**
+     * Whether the tagged message is the copy of one already delivered locally, which is then
+     * forgotten.
+     */
+    synchronized boolean isEcho(long origin, long sequence) {
+        if (expected.isEmpty() || origin != this.origin) {
+            return false;
+        }
+        return expected.remove(sequence) != null;
+    }
+
+    private void expire(long now) {
+        for (Iterator<Long> it = expected.values().iterator(); it.hasNext();) {
+            if (now - it.next() < MAX_AGE) {
+                break;
+            }
+            it.remove();
+        }
+    }
+}
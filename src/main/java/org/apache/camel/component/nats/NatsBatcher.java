@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.nats.client.Message;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Accumulates the messages received by one subscription into exchanges of batchSize
+ * messages, a batch being also completed batchTimeout milliseconds after its first message.
+ *
+ * The body of such an exchange is the list of the received NATS messages, or of their decoded
+ * bodies when the endpoint has a codec. A batch completed
+ * by its size is processed on the subscription thread, one completed by the timeout on the
+ * consumer's timer thread (unless concurrentConsumers hands both over to the worker pool).
+ */
+public class NatsBatcher {
+
+    public static final String COMPLETED_BY_SIZE = "size";
+    public static final String COMPLETED_BY_TIMEOUT = "timeout";
+    public static final String COMPLETED_BY_STOP = "stop";
+
+    private final NatsConsumer consumer;
+    private final int batchSize;
+    private final long batchTimeout;
+    private final ScheduledExecutorService timer;
+
+    private List<Message> messages = null;
+    private long firstReceivedTime;
+    private long generation;
+    private ScheduledFuture<?> timeoutTask = null;
+
+    NatsBatcher(NatsConsumer consumer, int batchSize, long batchTimeout, ScheduledExecutorService timer) {
+        this.consumer = consumer;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.timer = timer;
+    }
+
+    public void add(Message message, long receivedTime) {
+        List<Message> completed = null;
+        long completedReceivedTime = 0;
+        synchronized (this) {
+            if (messages == null) {
+                messages = new ArrayList<Message>(batchSize);
+                firstReceivedTime = receivedTime;
+                scheduleTimeout(++generation);
+            }
+            messages.add(message);
+            if (messages.size() >= batchSize) {
+                completed = messages;
+                completedReceivedTime = firstReceivedTime;
+                reset();
+            }
+        }
+        if (completed != null) {
+            dispatch(completed, completedReceivedTime, COMPLETED_BY_SIZE);
+        }
+    }
+
+    /**
+     * Processes what has been accumulated so far, when the consumer stops.
+     */
+    void complete() {
+        List<Message> completed;
+        long completedReceivedTime;
+        synchronized (this) {
+            completed = messages;
+            completedReceivedTime = firstReceivedTime;
+            reset();
+        }
+        if (completed != null) {
+            dispatch(completed, completedReceivedTime, COMPLETED_BY_STOP);
+        }
+    }
+
+    private void scheduleTimeout(final long batch) {
+        if (timer == null) {
+            return;
+        }
+        timeoutTask = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                List<Message> completed = null;
+                long completedReceivedTime = 0;
+                synchronized (NatsBatcher.this) {
+                    // The batch may have been completed by its size in the meantime
+                    if (generation == batch && messages != null) {
+                        completed = messages;
+                        completedReceivedTime = firstReceivedTime;
+                        messages = null;
+                        timeoutTask = null;
+                    }
+                }
+                if (completed != null) {
+                    dispatch(completed, completedReceivedTime, COMPLETED_BY_TIMEOUT);
+                }
+            }
+        }, batchTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void reset() {
+        messages = null;
+        if (timeoutTask != null) {
+            timeoutTask.cancel(false);
+            timeoutTask = null;
+        }
+    }
+
+    private void dispatch(List<Message> batch, long receivedTime, String completedBy) {
+        Exchange exchange = consumer.getEndpoint().createExchange();
+        org.apache.camel.Message in = exchange.getIn();
+        NatsCodec codec = consumer.getEndpoint().getNatsConfiguration().getCodec();
+        if (codec == null) {
+            in.setBody(batch);
+        } else {
+            List<Object> bodies = new ArrayList<Object>(batch.size());
+            try {
+                for (Message message : batch) {
+                    bodies.add(codec.decode(exchange, NatsMessage.dataOf(message)));
+                }
+            } catch (Exception e) {
+                consumer.getExceptionHandler().handleException("Unable to decode a batch of NATS messages", exchange, e);
+                return;
+            }
+            in.setBody(bodies);
+        }
+        in.setHeader(NatsConstants.NATS_BATCH_SIZE, batch.size());
+        in.setHeader(NatsConstants.NATS_BATCH_COMPLETED_BY, completedBy);
+        in.setHeader(NatsConstants.NATS_MESSAGE_TIMESTAMP, receivedTime);
+        consumer.dispatch(exchange);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import io.nats.client.Message;
+import io.nats.connector.CamelNatsAdapter;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.converter.stream.FileInputStreamCache;
+import org.apache.camel.converter.stream.InputStreamCache;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.FileUtil;
+import org.apache.camel.util.IOHelper;
+
+/**
+ * Reassembles the chunked transfers received by one subscription, each transfer being
+ * written as its chunks arrive: in memory up to chunkSpoolThreshold bytes, then to a
+ * temporary file. Transfers are spooled earlier when those in memory would take more than
+ * chunkMemoryLimit bytes together. The body of the exchange of a complete transfer is a stream cache over
+ * either, the file being deleted once the exchange is done.
+ *
+ * Chunks are expected in sequence, which a single subscription guarantees. A transfer missing
+ * a chunk (dropped as a slow consumer, taken by another member of a queue group...) is
+ * reported to the exception handler and its next chunks are ignored; one not receiving any
+ * chunk for chunkTimeout milliseconds is dropped.
+ */
+public class NatsChunkAssembler {
+
+    private final NatsConsumer consumer;
+    private final CamelNatsAdapter adapter;
+    private final boolean replyToEnabled;
+    private final long timeout;
+    private final int spoolThreshold;
+    private final long memoryLimit;
+    private final File spoolDirectory;
+    // Bytes of the transfers in progress held in memory, guarded by this
+    private long memoryUsed;
+
+    private final Map<Long, Transfer> transfers = new HashMap<Long, Transfer>();
+
+    NatsChunkAssembler(NatsConsumer consumer, CamelNatsAdapter adapter) {
+        NatsConfiguration config = consumer.getEndpoint().getNatsConfiguration();
+        this.consumer = consumer;
+        this.adapter = adapter;
+        this.replyToEnabled = !config.isDisableReplyTo();
+        this.timeout = config.getChunkTimeout();
+        this.spoolThreshold = Math.max(0, config.getChunkSpoolThreshold());
+        this.memoryLimit = Math.max(0, config.getChunkMemoryLimit());
+        this.spoolDirectory = consumer.getEndpoint().getCamelContext().getStreamCachingStrategy().getSpoolDirectory();
+    }
+
+    /**
+     * Adds a received chunk to its transfer, processing the transfer when it is the last one.
+     */
+    public void add(Message chunk, String subscriptionSubject) {
+        byte[] data = chunk.getData();
+        long transferId = NatsChunks.transferId(data);
+        int sequence = NatsChunks.sequence(data);
+        boolean last = NatsChunks.isLast(data);
+
+        Transfer completed = null;
+        String failure = null;
+        Exception cause = null;
+        synchronized (this) {
+            Transfer transfer = transfers.get(transferId);
+            if (sequence == 0) {
+                if (transfer != null) {
+                    transfer.discard();
+                }
+                transfer = new Transfer(transferId);
+                transfers.put(transferId, transfer);
+            } else if (transfer == null || transfer.next != sequence) {
+                if (transfer == null || !transfer.failed) {
+                    failure = "Chunk " + (transfer == null ? 0 : transfer.next) + " of the transfer " + Long.toHexString(transferId)
+                        + " on " + chunk.getSubject() + " is missing, its body is dropped";
+                }
+                if (transfer == null) {
+                    transfer = new Transfer(transferId);
+                    transfers.put(transferId, transfer);
+                }
+                transfer.discard();
+                transfer.failed = true;
+            }
+
+            transfer.lastChunkTime = System.currentTimeMillis();
+            if (!transfer.failed) {
+                try {
+                    transfer.write(data, NatsChunks.HEADER_SIZE, data.length - NatsChunks.HEADER_SIZE);
+                    transfer.next++;
+                } catch (IOException e) {
+                    failure = "Unable to spool the transfer " + Long.toHexString(transferId) + " on " + chunk.getSubject();
+                    cause = e;
+                    transfer.discard();
+                    transfer.failed = true;
+                }
+            }
+            if (last) {
+                transfers.remove(transferId);
+                if (!transfer.failed) {
+                    completed = transfer;
+                }
+            }
+        }
+
+        if (failure != null) {
+            consumer.getExceptionHandler().handleException(failure, cause != null ? cause : new IllegalStateException(failure));
+        }
+        if (completed != null) {
+            dispatch(completed, chunk, subscriptionSubject);
+        }
+    }
+
+    private void dispatch(Transfer transfer, Message last, String subscriptionSubject) {
+        Exchange exchange = consumer.getEndpoint().createExchange();
+        final InputStream body;
+        final File file = transfer.file;
+        try {
+            body = transfer.complete();
+        } catch (IOException e) {
+            transfer.discard();
+            consumer.getExceptionHandler().handleException("Unable to read back the spooled transfer " + Long.toHexString(transfer.id), exchange, e);
+            return;
+        }
+
+        NatsMessage in = new NatsMessage(last, System.currentTimeMillis(), subscriptionSubject);
+        in.setBody(body);
+        exchange.setIn(in);
+        if (file != null) {
+            exchange.addOnCompletion(new SynchronizationAdapter() {
+                @Override
+                public void onDone(Exchange exchange) {
+                    IOHelper.close(body);
+                    FileUtil.deleteFile(file);
+                }
+            });
+        }
+        if (replyToEnabled && last.getReplyTo() != null) {
+            consumer.prepareReply(exchange, adapter, last.getReplyTo());
+        }
+        consumer.dispatch(exchange);
+    }
+
+    /**
+     * Drops the transfers which have not received any chunk for chunkTimeout milliseconds.
+     */
+    void expire(long now) {
+        List<Transfer> expired = new ArrayList<Transfer>();
+        synchronized (this) {
+            for (Iterator<Transfer> it = transfers.values().iterator(); it.hasNext();) {
+                Transfer transfer = it.next();
+                if (now - transfer.lastChunkTime >= timeout) {
+                    it.remove();
+                    transfer.discard();
+                    if (!transfer.failed) {
+                        expired.add(transfer);
+                    }
+                }
+            }
+        }
+        for (Transfer transfer : expired) {
+            String message = "Incomplete transfer " + Long.toHexString(transfer.id) + " dropped after " + transfer.next
+                + " chunks, none received for " + timeout + " ms";
+            consumer.getExceptionHandler().handleException(message, new TimeoutException(message));
+        }
+    }
+
+    /**
+     * Drops the transfers in progress, when the consumer stops.
+     */
+    synchronized void clear() {
+        for (Transfer transfer : transfers.values()) {
+            transfer.discard();
+        }
+        transfers.clear();
+    }
+
+    private final class Transfer {
+
+        private final long id;
+        private int next;
+        private long lastChunkTime;
+        private boolean failed;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File file;
+        private OutputStream out;
+
+        Transfer(long id) {
+            this.id = id;
+        }
+
+        void write(byte[] data, int offset, int length) throws IOException {
+            if (out == null && (memory.size() + length > spoolThreshold || memoryUsed + length > memoryLimit)) {
+                file = File.createTempFile("camel-nats-", ".chunks", spoolDirectory);
+                out = new BufferedOutputStream(new FileOutputStream(file));
+                memory.writeTo(out);
+                release();
+            }
+            if (out != null) {
+                out.write(data, offset, length);
+            } else {
+                memory.write(data, offset, length);
+                memoryUsed += length;
+            }
+        }
+
+        InputStream complete() throws IOException {
+            if (out == null) {
+                InputStream body = new InputStreamCache(memory.toByteArray());
+                synchronized (NatsChunkAssembler.this) {
+                    release();
+                }
+                return body;
+            }
+            out.close();
+            return new FileInputStreamCache(file);
+        }
+
+        private void release() {
+            if (memory != null) {
+                memoryUsed -= memory.size();
+                memory = null;
+            }
+        }
+
+        void discard() {
+            release();
+            IOHelper.close(out);
+            if (file != null) {
+                FileUtil.deleteFile(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.camel.WrappedFile;
+
+/**
+ * The format of the chunks a body is sent as when it does not fit in a single NATS message.
+ *
+ * A chunk starts with a 15 bytes header: a 2 bytes marker (0xC1, which never appears in UTF-8
+ * text, and 'C'), a flags byte telling whether it is the last chunk, the 8 bytes id of the
+ * transfer and the 4 bytes sequence number of the chunk in it. Every chunk but the last one is
+ * full, so a transfer of an exact multiple of the chunk size ends with an empty chunk.
+ *
+ * A chunked consumer takes for a chunk any payload of 15 bytes or more starting with 0xC1 'C'
+ * and a flags byte of 0 or 1, whoever published it: such a binary payload from a producer
+ * which is not chunked is either delivered as a one-chunk transfer or dropped as a transfer
+ * missing its first chunks.
+ */
+public final class NatsChunks {
+
+    public static final int HEADER_SIZE = 15;
+
+    private static final byte MARKER = (byte) 0xC1;
+    private static final byte MARKER_C = 'C';
+    private static final byte LAST = 1;
+
+    private NatsChunks() {
+    }
+
+    /**
+     * Whether the payload is a chunk sent by a chunked producer
+     */
+    public static boolean isChunk(byte[] data) {
+        return data != null && data.length >= HEADER_SIZE && data[0] == MARKER && data[1] == MARKER_C
+            && (data[2] & ~LAST) == 0;
+    }
+
+    static void writeHeader(byte[] chunk, long transferId, int sequence, boolean last) {
+        chunk[0] = MARKER;
+        chunk[1] = MARKER_C;
+        chunk[2] = last ? LAST : 0;
+        for (int i = 0; i < 8; i++) {
+            chunk[3 + i] = (byte) (transferId >>> (56 - 8 * i));
+        }
+        chunk[11] = (byte) (sequence >>> 24);
+        chunk[12] = (byte) (sequence >>> 16);
+        chunk[13] = (byte) (sequence >>> 8);
+        chunk[14] = (byte) sequence;
+    }
+
+    static boolean isLast(byte[] chunk) {
+        return (chunk[2] & LAST) != 0;
+    }
+
+    static long transferId(byte[] chunk) {
+        long id = 0;
+        for (int i = 0; i < 8; i++) {
+            id = (id << 8) | (chunk[3 + i] & 0xFF);
+        }
+        return id;
+    }
+
+    static int sequence(byte[] chunk) {
+        return ((chunk[11] & 0xFF) << 24) | ((chunk[12] & 0xFF) << 16) | ((chunk[13] & 0xFF) << 8) | (chunk[14] & 0xFF);
+    }
+
+    /**
+     * Whether the body is sent as chunks whatever its size, so as to never be read in memory
+     */
+    static boolean isStreamed(Object body) {
+        return body instanceof InputStream || body instanceof File || body instanceof WrappedFile;
+    }
+
+    /**
+     * Reads up to length bytes, fewer only at the end of the stream
+     */
+    static int read(InputStream stream, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = stream.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Turns exchange bodies into NATS payloads and received payloads back into bodies, for the
+ * endpoints having a codec (codec=#myCodec, or one of the {@link NatsCodecs} by name).
+ *
+ * The same codec serves every thread of the endpoint, so it must be thread safe.
+ */
+public interface NatsCodec {
+
+    /**
+     * The payload to publish for the body.
+     *
+     * @param buffer a per thread buffer to write into, the payload being then
+     *        {@link NatsCodecBuffer#toByteArray()}. It is reused once this returns, so it must
+     *        not be kept, nor its array returned
+     */
+    byte[] encode(Exchange exchange, Object body, NatsCodecBuffer buffer) throws Exception;
+
+    /**
+     * The body of a received message.
+     *
+     * @param payload the received bytes, not copied
+     */
+    Object decode(Exchange exchange, byte[] payload) throws Exception;
+}
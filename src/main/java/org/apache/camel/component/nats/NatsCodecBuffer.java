@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte array which {@link NatsCodec}s encode into, reused by the publishing thread
+ * from one message to the next instead of allocating (and growing) a new array per message.
+ */
+public final class NatsCodecBuffer extends OutputStream {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    // Larger buffers are not kept around once used
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<NatsCodecBuffer> BUFFERS = new ThreadLocal<NatsCodecBuffer>() {
+        @Override
+        protected NatsCodecBuffer initialValue() {
+            return new NatsCodecBuffer();
+        }
+    };
+
+    private byte[] array = new byte[INITIAL_BUFFER_SIZE];
+    private int size;
+    private boolean inUse;
+
+    private NatsCodecBuffer() {
+    }
+
+    /**
+     * The buffer of the calling thread, emptied, or a new one if that one is already in use
+     */
+    static NatsCodecBuffer acquire() {
+        NatsCodecBuffer buffer = BUFFERS.get();
+        if (buffer.inUse) {
+            buffer = new NatsCodecBuffer();
+        }
+        buffer.inUse = true;
+        buffer.size = 0;
+        return buffer;
+    }
+
+    void release() {
+        inUse = false;
+        if (array.length > MAX_POOLED_BUFFER_SIZE) {
+            array = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        array[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, array, size, length);
+        size += length;
+    }
+
+    /**
+     * Makes room for at least the given number of bytes after the ones written so far
+     */
+    public void ensureCapacity(int length) {
+        if (size + length > array.length) {
+            array = Arrays.copyOf(array, Math.max(size + length, array.length * 2));
+        }
+    }
+
+    /**
+     * The underlying array, to write into directly from {@link #size()} before
+     * {@link #setSize(int)}. It changes whenever the buffer grows
+     */
+    public byte[] array() {
+        return array;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        if (size < 0 || size > array.length) {
+            throw new IndexOutOfBoundsException("Size " + size + " out of a buffer of " + array.length);
+        }
+        this.size = size;
+    }
+
+    /**
+     * A copy of the bytes written, to publish
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(array, size);
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.nats.client.Message;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.InvalidPayloadException;
+
+/**
+ * The built-in {@link NatsCodec}s, which the codec option also accepts by name: raw, utf8 or
+ * serialization.
+ */
+public final class NatsCodecs {
+
+    /**
+     * byte[] bodies, published as is (ByteBuffer, InputStream and NATS message bodies too,
+     * anything else being converted to byte[]), consumers receiving the payload as byte[]
+     */
+    public static final NatsCodec RAW = new RawCodec();
+
+    /**
+     * Bodies converted to String, published in UTF-8, consumers receiving a String
+     */
+    public static final NatsCodec UTF8 = new Utf8Codec();
+
+    /**
+     * The classes the serialization codec accepts to deserialize by default
+     */
+    public static final String DEFAULT_SERIALIZATION_ALLOWED_CLASSES = "java.lang.*,java.util.*,java.math.*,java.time.*";
+
+    /**
+     * Serializable bodies, published with Java serialization, consumers receiving the
+     * deserialized object (its class being resolved by the CamelContext). Only the
+     * {@link #DEFAULT_SERIALIZATION_ALLOWED_CLASSES} are deserialized, see
+     * {@link #serialization(String)} for others.
+     */
+    public static final NatsCodec SERIALIZATION = new SerializationCodec(DEFAULT_SERIALIZATION_ALLOWED_CLASSES);
+
+    private NatsCodecs() {
+    }
+
+    /**
+     * The serialization codec deserializing only the given classes: a comma-separated list of
+     * class names, pkg.* for the classes of a package (not of its subpackages), or * for any
+     * class. Deserializing any class of the classpath runs the code of whichever class the
+     * publisher chooses, so * is only for subjects published by trusted parties.
+     */
+    public static NatsCodec serialization(String allowedClasses) {
+        return new SerializationCodec(allowedClasses);
+    }
+
+    /**
+     * The built-in codec of the given name
+     */
+    public static NatsCodec forName(String name) {
+        if ("raw".equalsIgnoreCase(name)) {
+            return RAW;
+        }
+        if ("utf8".equalsIgnoreCase(name) || "utf-8".equalsIgnoreCase(name)) {
+            return UTF8;
+        }
+        if ("serialization".equalsIgnoreCase(name)) {
+            return SERIALIZATION;
+        }
+        throw new IllegalArgumentException("Unknown NATS codec: " + name
+            + " (raw, utf8, serialization, or #name of a codec in the registry)");
+    }
+
+    private static final class RawCodec implements NatsCodec {
+
+        @Override
+        public byte[] encode(Exchange exchange, Object body, NatsCodecBuffer buffer) throws Exception {
+            if (body == null) {
+                throw new InvalidPayloadException(exchange, byte[].class);
+            }
+            if (body instanceof byte[] || body instanceof ByteBuffer || body instanceof Message
+                || body instanceof InputStream) {
+                return NatsPayloads.toBytes(exchange, body, null);
+            }
+            return exchange.getContext().getTypeConverter().mandatoryConvertTo(byte[].class, exchange, body);
+        }
+
+        @Override
+        public Object decode(Exchange exchange, byte[] payload) {
+            return payload;
+        }
+
+        @Override
+        public String toString() {
+            return "raw";
+        }
+    }
+
+    private static final class Utf8Codec implements NatsCodec {
+
+        private static final ThreadLocal<CharsetEncoder> ENCODERS = new ThreadLocal<CharsetEncoder>() {
+            @Override
+            protected CharsetEncoder initialValue() {
+                // Same replacements as String.getBytes
+                return StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+        };
+
+        @Override
+        public byte[] encode(Exchange exchange, Object body, NatsCodecBuffer buffer) throws Exception {
+            if (body == null) {
+                throw new InvalidPayloadException(exchange, String.class);
+            }
+            String text = body instanceof String
+                ? (String) body : exchange.getContext().getTypeConverter().mandatoryConvertTo(String.class, exchange, body);
+
+            // Encoded straight into the buffer, at most 3 bytes per char
+            CharsetEncoder encoder = ENCODERS.get();
+            buffer.ensureCapacity(text.length() * 3);
+            ByteBuffer out = ByteBuffer.wrap(buffer.array(), buffer.size(), buffer.array().length - buffer.size());
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(text), out, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            encoder.flush(out);
+            buffer.setSize(out.position());
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public Object decode(Exchange exchange, byte[] payload) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return "utf8";
+        }
+    }
+
+    private static final class SerializationCodec implements NatsCodec {
+
+        private final boolean allowAll;
+        private final Set<String> classes = new HashSet<String>();
+        private final Set<String> packages = new HashSet<String>();
+
+        SerializationCodec(String allowedClasses) {
+            boolean all = false;
+            for (String name : allowedClasses.split(",")) {
+                name = name.trim();
+                if (name.equals("*")) {
+                    all = true;
+                } else if (name.endsWith(".*")) {
+                    packages.add(name.substring(0, name.length() - 2));
+                } else if (!name.isEmpty()) {
+                    classes.add(name);
+                }
+            }
+            allowAll = all;
+        }
+
+        private void checkAllowed(String name) throws InvalidClassException {
+            if (allowAll) {
+                return;
+            }
+            // Arrays are checked by their element class, primitives being always allowed
+            int dimensions = 0;
+            while (name.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            if (dimensions > 0) {
+                if (name.charAt(dimensions) != 'L') {
+                    return;
+                }
+                name = name.substring(dimensions + 1, name.length() - 1);
+            }
+            int dot = name.lastIndexOf('.');
+            if (!classes.contains(name) && (dot < 0 || !packages.contains(name.substring(0, dot)))) {
+                throw new InvalidClassException(name, "not allowed by serializationAllowedClasses");
+            }
+        }
+
+        @Override
+        public byte[] encode(Exchange exchange, Object body, NatsCodecBuffer buffer) throws Exception {
+            if (!(body instanceof Serializable)) {
+                throw new InvalidPayloadException(exchange, Serializable.class);
+            }
+            ObjectOutputStream out = new ObjectOutputStream(buffer);
+            out.writeObject(body);
+            out.flush();
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public Object decode(final Exchange exchange, byte[] payload) throws Exception {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload)) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    checkAllowed(desc.getName());
+                    Class<?> type = exchange == null
+                        ? null : exchange.getContext().getClassResolver().resolveClass(desc.getName());
+                    return type != null ? type : super.resolveClass(desc);
+                }
+
+                @Override
+                protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+                    for (String name : interfaces) {
+                        checkAllowed(name);
+                    }
+                    return super.resolveProxyClass(interfaces);
+                }
+            };
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "serialization";
+        }
+    }
+}
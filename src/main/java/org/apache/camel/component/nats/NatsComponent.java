@@ -18,16 +18,28 @@ package org.apache.camel.component.nats;
 
 import java.util.Map;
 
+import io.nats.connector.NatsConnectionRegistry;
+
 import org.apache.camel.Endpoint;
 import org.apache.camel.impl.DefaultComponent;
 
 public class NatsComponent extends DefaultComponent {
 
+    private final NatsConnectionRegistry connectionRegistry = new NatsConnectionRegistry();
+    private final NatsLocalDispatcher localDispatcher = new NatsLocalDispatcher();
+
     @Override
     protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
         
     	NatsConfiguration config = new NatsConfiguration();
+        Object codec = parameters.get("codec");
+        if (codec instanceof String && !((String) codec).startsWith("#")) {
+            parameters.put("codec", NatsCodecs.forName((String) codec));
+        }
         setProperties(config, parameters);
+        if (config.getCodec() == NatsCodecs.SERIALIZATION) {
+            config.setCodec(NatsCodecs.serialization(config.getSerializationAllowedClasses()));
+        }
         String natsServer = remaining;
         
         //Determine if NATS server is deployed as stand-alone server or as Apcera service
@@ -45,4 +57,17 @@ public class NatsComponent extends DefaultComponent {
         return endpoint;
     }
 
+    /**
+     * The connections shared by the endpoints of this component
+     */
+    public NatsConnectionRegistry getConnectionRegistry() {
+        return connectionRegistry;
+    }
+
+    /**
+     * The consumers of this component receiving messages published with localDelivery
+     */
+    NatsLocalDispatcher getLocalDispatcher() {
+        return localDispatcher;
+    }
 }
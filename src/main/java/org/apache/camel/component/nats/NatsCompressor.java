@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.nats.client.Message;
+
+import org.apache.camel.RuntimeCamelException;
+
+/**
+ * Compresses payloads for {@link NatsCompression}, reusing a Deflater, an Inflater and a
+ * buffer per thread.
+ *
+ * A compressed payload starts with a 3 bytes marker (0xC1, which never appears in UTF-8
+ * text, 'Z' and the compression) followed by the original length on 4 bytes, then the zlib
+ * stream, whose 2 bytes header is checked too. An uncompressed binary payload from another
+ * publisher starting with the same 9 bytes would still be taken for a compressed one.
+ */
+public final class NatsCompressor {
+
+    private static final byte MARKER = (byte) 0xC1;
+    private static final byte MARKER_Z = 'Z';
+    private static final byte DEFLATE = 1;
+    private static final int HEADER_SIZE = 7;
+    // Deflate never compresses more than that, so no valid payload claims a larger length
+    private static final int MAX_RATIO = 1032;
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    // Larger buffers are not kept around once used
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INITIAL_BUFFER_SIZE];
+        }
+    };
+
+    private NatsCompressor() {
+    }
+
+    /**
+     * The compressed payload, or the payload itself when below the threshold or when
+     * compressing would not make it smaller.
+     */
+    public static byte[] compress(NatsCompression compression, byte[] payload, int threshold) {
+        if (compression != NatsCompression.DEFLATE || payload.length < threshold || payload.length <= HEADER_SIZE) {
+            return payload;
+        }
+
+        // Output not fitting in the size of the payload is not worth it
+        byte[] buffer = buffer(payload.length);
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        int length = HEADER_SIZE;
+        while (!deflater.finished() && length < payload.length) {
+            length += deflater.deflate(buffer, length, payload.length - length);
+        }
+        if (!deflater.finished() || length >= payload.length) {
+            release(buffer);
+            return payload;
+        }
+
+        buffer[0] = MARKER;
+        buffer[1] = MARKER_Z;
+        buffer[2] = DEFLATE;
+        buffer[3] = (byte) (payload.length >>> 24);
+        buffer[4] = (byte) (payload.length >>> 16);
+        buffer[5] = (byte) (payload.length >>> 8);
+        buffer[6] = (byte) payload.length;
+        byte[] compressed = Arrays.copyOf(buffer, length);
+        release(buffer);
+        return compressed;
+    }
+
+    /**
+     * Whether the payload was compressed by a producer
+     */
+    public static boolean isCompressed(byte[] data) {
+        return data != null && data.length > HEADER_SIZE + 1 && data[0] == MARKER && data[1] == MARKER_Z
+            && data[2] == DEFLATE && isZlibHeader(data[HEADER_SIZE], data[HEADER_SIZE + 1]);
+    }
+
+    private static boolean isZlibHeader(byte cmf, byte flg) {
+        // Deflate with a 32K window at most, and the header checksum
+        return (cmf & 0x0F) == 8 && (cmf & 0xFF) >>> 4 <= 7 && (((cmf & 0xFF) << 8) | (flg & 0xFF)) % 31 == 0;
+    }
+
+    /**
+     * The length of the payload once decompressed, as announced by the compressed one
+     */
+    public static int originalLength(byte[] data) {
+        return ((data[3] & 0xFF) << 24) | ((data[4] & 0xFF) << 16) | ((data[5] & 0xFF) << 8) | (data[6] & 0xFF);
+    }
+
+    /**
+     * Replaces the compressed payload of the message by the original one. The caller is expected
+     * to have checked the {@link #originalLength(byte[])} against its own limit.
+     */
+    public static void decompress(Message message) {
+        byte[] data = message.getData();
+        int length = originalLength(data);
+        // Checked before allocating anything for it
+        if (length < 0 || length > (long) (data.length - HEADER_SIZE) * MAX_RATIO) {
+            throw new RuntimeCamelException("Corrupt compressed NATS payload on " + message.getSubject());
+        }
+
+        byte[] buffer = buffer(length);
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int n = inflater.inflate(buffer, inflated, length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != length || !inflater.finished()) {
+                throw new RuntimeCamelException("Corrupt compressed NATS payload on " + message.getSubject());
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeCamelException("Corrupt compressed NATS payload on " + message.getSubject(), e);
+        }
+        // Copied by the message
+        message.setData(buffer, 0, length);
+        release(buffer);
+    }
+
+    private static byte[] buffer(int size) {
+        byte[] buffer = BUFFERS.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+        }
+        return buffer;
+    }
+
+    private static void release(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            BUFFERS.set(buffer);
+        }
+    }
+}
@@ -16,8 +16,11 @@
  */
 package org.apache.camel.component.nats;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
+import org.apache.camel.ThreadPoolRejectedPolicy;
 import org.apache.camel.spi.Metadata;
 import org.apache.camel.spi.UriParam;
 import org.apache.camel.spi.UriParams;
@@ -46,16 +49,84 @@ public class NatsConfiguration {
     private int maxReconnectAttempts = 3;
     @UriParam(defaultValue = "4000")
     private int pingInterval = 4000;
+    @UriParam(defaultValue = "2000")
+    private int connectionTimeout = 2000;
     @UriParam(label = "producer")
     private String replySubject;
+    @UriParam
+    private String charset;
+    @UriParam(label = "producer", defaultValue = "ALWAYS")
+    private NatsFlushPolicy flushPolicy = NatsFlushPolicy.ALWAYS;
+    @UriParam(label = "producer", defaultValue = "100")
+    private int flushBatchSize = 100;
+    @UriParam(label = "producer", defaultValue = "1000")
+    private long flushInterval = 1000;
     @UriParam(defaultValue = "false")
     private boolean noRandomizeServers;
+    @UriParam(defaultValue = "true")
+    private boolean sharedConnection = true;
+    @UriParam(defaultValue = "false")
+    private boolean localDelivery;
+    @UriParam(label = "producer", defaultValue = "false")
+    private boolean localDeliveryTag;
+    @UriParam(defaultValue = "NONE")
+    private NatsCompression compression = NatsCompression.NONE;
+    @UriParam(defaultValue = "1024")
+    private int compressionThreshold = 1024;
+    @UriParam(label = "consumer", defaultValue = "16777216")
+    private int compressionMaxSize = 16 * 1024 * 1024;
+    @UriParam
+    private NatsCodec codec;
+    @UriParam(defaultValue = NatsCodecs.DEFAULT_SERIALIZATION_ALLOWED_CLASSES)
+    private String serializationAllowedClasses = NatsCodecs.DEFAULT_SERIALIZATION_ALLOWED_CLASSES;
     @UriParam(label = "consumer")
     private String queueName;
     @UriParam(label = "consumer")
     private String maxMessages;
-    @UriParam(label = "consumer", defaultValue = "1")
+    @UriParam(defaultValue = "1")
     private int poolSize = 1;
+    @UriParam(label = "consumer", defaultValue = "0")
+    private int concurrentConsumers;
+    @UriParam(label = "consumer", defaultValue = "1000")
+    private int maxQueueSize = 1000;
+    @UriParam(label = "consumer", defaultValue = "CallerRuns")
+    private ThreadPoolRejectedPolicy rejectedPolicy = ThreadPoolRejectedPolicy.CallerRuns;
+    @UriParam(label = "consumer")
+    private String orderingKey;
+    @UriParam(label = "consumer", defaultValue = "65536")
+    private int pendingMessageLimit = 65536;
+    @UriParam(label = "consumer", defaultValue = "67108864")
+    private int pendingBytesLimit = 67108864;
+    @UriParam(label = "producer", defaultValue = "THREAD")
+    private NatsStriping striping = NatsStriping.THREAD;
+    @UriParam(label = "advanced", defaultValue = "1")
+    private int logSampleRate = 1;
+    @UriParam(label = "consumer", defaultValue = "false")
+    private boolean disableReplyTo;
+    @UriParam(label = "consumer", defaultValue = "0")
+    private int batchSize;
+    @UriParam(label = "consumer", defaultValue = "1000")
+    private long batchTimeout = 1000;
+    @UriParam(label = "producer", defaultValue = "1000")
+    private int subjectCacheSize = 1000;
+    @UriParam(label = "producer", defaultValue = "false")
+    private boolean requestReply;
+    @UriParam(label = "producer", defaultValue = "20000")
+    private long requestTimeout = 20000;
+    @UriParam(label = "consumer", defaultValue = "30000")
+    private long startupTimeout = 30000;
+    @UriParam(label = "consumer", defaultValue = "0")
+    private int startupMinConnections;
+    @UriParam(defaultValue = "false")
+    private boolean chunked;
+    @UriParam(label = "producer", defaultValue = "0")
+    private int chunkSize;
+    @UriParam(label = "consumer", defaultValue = "30000")
+    private long chunkTimeout = 30000;
+    @UriParam(label = "consumer", defaultValue = "1048576")
+    private int chunkSpoolThreshold = 1024 * 1024;
+    @UriParam(label = "consumer", defaultValue = "16777216")
+    private long chunkMemoryLimit = 16 * 1024 * 1024;
     
     private boolean cloudEnvironment = false;
 	private String cloudUri;
@@ -71,7 +142,8 @@ public class NatsConfiguration {
     }
 
     /**
-     * The name of topic we want to use
+     * The name of topic we want to use. A consumer may subscribe to several subjects or wildcards
+     * (orders.*, trades.>) separated by commas, all on the same connection
      */
     public String getTopic() {
         return topic;
@@ -81,6 +153,21 @@ public class NatsConfiguration {
         this.topic = topic;
     }
 
+    /**
+     * The subjects a consumer subscribes to: the topic, or each subject of a comma separated topic
+     */
+    public List<String> getSubjects() {
+        List<String> subjects = new ArrayList<String>();
+        if (topic != null) {
+            for (String subject : topic.split(",")) {
+                if (!subject.trim().isEmpty()) {
+                    subjects.add(subject.trim());
+                }
+            }
+        }
+        return subjects;
+    }
+
     /**
      * Whether or not using reconnection feature
      */
@@ -157,6 +244,17 @@ public class NatsConfiguration {
     public void setPingInterval(int pingInterval) {
         this.pingInterval = pingInterval;
     }
+
+    /**
+     * Time to wait for a connection to a server to be established (in milliseconds)
+     */
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
     
 
     /**
@@ -170,6 +268,55 @@ public class NatsConfiguration {
         this.replySubject = replySubject;
     }
 
+    /**
+     * The charset used to encode text bodies, of published messages or consumer replies, the exchange
+     * charset (or the platform one) if not set. byte[], ByteBuffer and InputStream bodies are published as is
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    public void setCharset(String charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * When to flush published messages to the server: after every message (ALWAYS), every
+     * flushBatchSize messages (COUNT), every flushInterval microseconds (INTERVAL) or only
+     * when the producer is stopped (NEVER). With COUNT and INTERVAL, the route goes on once
+     * flushed on a thread of the NatsProducerCompletion pool
+     */
+    public NatsFlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public void setFlushPolicy(NatsFlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * Number of published messages after which a flush is triggered (COUNT flush policy)
+     */
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
+
+    public void setFlushBatchSize(int flushBatchSize) {
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    /**
+     * Time between two background flushes (in microseconds, INTERVAL flush policy). With the
+     * COUNT policy, the longest time a partial batch waits for its flush
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
     /**
      * Whether or not randomizing the order of servers for the connection attempts
      */
@@ -181,6 +328,117 @@ public class NatsConfiguration {
         this.noRandomizeServers = noRandomizeServers;
     }
 
+    /**
+     * Whether or not sharing connections with the other endpoints having the same connection settings.
+     * The n-th connection of a pool is shared with the n-th connection of the other pools
+     */
+    public boolean isSharedConnection() {
+        return sharedConnection;
+    }
+
+    public void setSharedConnection(boolean sharedConnection) {
+        this.sharedConnection = sharedConnection;
+    }
+
+    /**
+     * Whether or not delivering the published messages straight to the consumers of the same
+     * component (also with localDelivery, on the same servers) subscribed to their subject, once
+     * published. The messages are still published for the remote subscribers, which requires
+     * localDeliveryTag on the producer. Consumers with localDelivery strip the header of tagged
+     * payloads and, without concurrentConsumers, process the messages, local or from the server,
+     * one at a time on a thread of their own. Those with a queueName or maxMessages only receive
+     * messages from the server
+     */
+    public boolean isLocalDelivery() {
+        return localDelivery;
+    }
+
+    public void setLocalDelivery(boolean localDelivery) {
+        this.localDelivery = localDelivery;
+    }
+
+    /**
+     * Whether or not a producer with localDelivery puts an 18 bytes header (0xC1 'L', then ids) in
+     * front of the payloads it also delivers locally, by which the local consumers recognize and
+     * drop the copies the server sends back. Required by localDelivery on a producer. The other
+     * subscribers receive the header as part of the payload, but for the consumers of this
+     * component with localDelivery, which strip it from any payload starting with 0xC1 'L'
+     */
+    public boolean isLocalDeliveryTag() {
+        return localDeliveryTag;
+    }
+
+    public void setLocalDeliveryTag(boolean localDeliveryTag) {
+        this.localDeliveryTag = localDeliveryTag;
+    }
+
+    /**
+     * How the producer compresses the payloads of at least compressionThreshold bytes (NONE or
+     * DEFLATE), a payload being sent as is when compressing does not make it smaller. A consumer
+     * with a compression decompresses the payloads it receives compressed, only when the body is
+     * read; other consumers get them compressed. Compressed payloads are recognized by a 9 bytes
+     * header (0xC1 'Z' 1, the length, then a zlib header): an uncompressed binary payload starting
+     * with the same bytes fails as corrupt on a consumer with a compression
+     */
+    public NatsCompression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(NatsCompression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Size in bytes from which the producer compresses payloads
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Largest size in bytes a received payload may decompress to, larger ones being dropped and
+     * reported to the exception handler without decompressing them
+     */
+    public int getCompressionMaxSize() {
+        return compressionMaxSize;
+    }
+
+    public void setCompressionMaxSize(int compressionMaxSize) {
+        this.compressionMaxSize = compressionMaxSize;
+    }
+
+    /**
+     * The codec encoding the published bodies and decoding the received payloads, the built-in
+     * raw, utf8 or serialization, or #name of a NatsCodec in the registry. Without a codec,
+     * bodies are published as described for charset and consumers receive the NATS message.
+     * Deserializing runs code of the received classes, so serialization is only for subjects
+     * published by trusted parties, even with serializationAllowedClasses
+     */
+    public NatsCodec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(NatsCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * The classes the serialization codec deserializes, others failing the exchange: a
+     * comma-separated list of class names, pkg.* for the classes of a package (not of its
+     * subpackages), or * for any class
+     */
+    public String getSerializationAllowedClasses() {
+        return serializationAllowedClasses;
+    }
+
+    public void setSerializationAllowedClasses(String serializationAllowedClasses) {
+        this.serializationAllowedClasses = serializationAllowedClasses;
+    }
+
     /**
      * The Queue name if we are using nats for a queue configuration
      */
@@ -204,7 +462,7 @@ public class NatsConfiguration {
     }
 
     /**
-     * Consumer pool size
+     * Consumer pool size, or number of connections a producer publishes with
      */
     public int getPoolSize() {
         return poolSize;
@@ -214,9 +472,270 @@ public class NatsConfiguration {
         this.poolSize = poolSize;
     }
 
+    /**
+     * Number of threads processing the messages received by the consumer's subscriptions.
+     * When 0, each message is processed on the thread of the subscription which received it
+     */
+    public int getConcurrentConsumers() {
+        return concurrentConsumers;
+    }
+
+    public void setConcurrentConsumers(int concurrentConsumers) {
+        this.concurrentConsumers = concurrentConsumers;
+    }
+
+    /**
+     * Number of received messages waiting for a concurrent consumer thread
+     */
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * What to do with a received message when maxQueueSize messages are already waiting:
+     * processing it on the subscription thread (CallerRuns), dropping it (Discard, DiscardOldest)
+     * or failing (Abort)
+     */
+    public ThreadPoolRejectedPolicy getRejectedPolicy() {
+        return rejectedPolicy;
+    }
+
+    public void setRejectedPolicy(ThreadPoolRejectedPolicy rejectedPolicy) {
+        this.rejectedPolicy = rejectedPolicy;
+    }
+
+    /**
+     * Keeps the messages of a same key in order while concurrent consumers process different keys
+     * in parallel. The key is "subject", "subjectToken:n" (n-th token of the subject, from 0),
+     * "header:name" or a simple language expression. When a consumer thread has maxQueueSize
+     * messages waiting, the subscription waits instead of applying the rejectedPolicy
+     */
+    public String getOrderingKey() {
+        return orderingKey;
+    }
+
+    public void setOrderingKey(String orderingKey) {
+        this.orderingKey = orderingKey;
+    }
+
+    /**
+     * Number of received messages a subscription keeps waiting for the route before
+     * dropping the next ones as a slow consumer (0 or less for no limit)
+     */
+    public int getPendingMessageLimit() {
+        return pendingMessageLimit;
+    }
+
+    public void setPendingMessageLimit(int pendingMessageLimit) {
+        this.pendingMessageLimit = pendingMessageLimit;
+    }
+
+    /**
+     * Size in bytes of the received messages a subscription keeps waiting for the route
+     * before dropping the next ones as a slow consumer (0 or less for no limit)
+     */
+    public int getPendingBytesLimit() {
+        return pendingBytesLimit;
+    }
+
+    public void setPendingBytesLimit(int pendingBytesLimit) {
+        this.pendingBytesLimit = pendingBytesLimit;
+    }
+
+    /**
+     * How a producer spreads the exchanges over its connections: each calling thread
+     * sticking to one connection (THREAD) or one connection after the other (ROUND_ROBIN)
+     */
+    public NatsStriping getStriping() {
+        return striping;
+    }
+
+    public void setStriping(NatsStriping striping) {
+        this.striping = striping;
+    }
+
+    /**
+     * Whether or not ignoring the reply subject of received messages. Otherwise such a message
+     * makes an InOut exchange, whose result is published to the reply subject through the
+     * connection which received it (not with batchSize)
+     */
+    public boolean isDisableReplyTo() {
+        return disableReplyTo;
+    }
+
+    public void setDisableReplyTo(boolean disableReplyTo) {
+        this.disableReplyTo = disableReplyTo;
+    }
+
+    /**
+     * Number of received messages making up one exchange, its body being the list of the
+     * messages. 0 or 1 for one exchange per message
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Time after which a partial batch is processed anyway (in milliseconds, counted from its
+     * first message), 0 or less to wait for batchSize messages
+     */
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    public void setBatchTimeout(long batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * Number of distinct subjects, given by the CamelNatsSubject and CamelNatsReplySubject headers,
+     * remembered as valid so that they are only checked once
+     */
+    public int getSubjectCacheSize() {
+        return subjectCacheSize;
+    }
+
+    public void setSubjectCacheSize(int subjectCacheSize) {
+        this.subjectCacheSize = subjectCacheSize;
+    }
+
+    /**
+     * Whether InOut exchanges wait for a reply, sent to an inbox of the producer's connection
+     * instead of the replySubject. The reply becomes the out message of the exchange
+     */
+    public boolean isRequestReply() {
+        return requestReply;
+    }
+
+    public void setRequestReply(boolean requestReply) {
+        this.requestReply = requestReply;
+    }
+
+    /**
+     * How long an InOut exchange waits for its reply (in milliseconds) before failing with an
+     * ExchangeTimedOutException, 0 or less to wait forever
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * How long a starting consumer waits for its connections, all of them being established in
+     * parallel (in milliseconds), 0 or less to wait forever. The startup fails if fewer than
+     * startupMinConnections are up by then
+     */
+    public long getStartupTimeout() {
+        return startupTimeout;
+    }
+
+    public void setStartupTimeout(long startupTimeout) {
+        this.startupTimeout = startupTimeout;
+    }
+
+    /**
+     * Number of connections of the pool which must be up for the consumer to start, the other
+     * ones still connecting in the background. 0 or less for all of them (poolSize). The startup
+     * fails as soon as too many connections failed for this number to be reached
+     */
+    public int getStartupMinConnections() {
+        return startupMinConnections;
+    }
+
+    public void setStartupMinConnections(int startupMinConnections) {
+        this.startupMinConnections = startupMinConnections;
+    }
+
+    /**
+     * Whether or not sending bodies as sequenced chunks: the producer splits InputStream and file
+     * bodies, read chunk by chunk, and the payloads larger than chunkSize (neither compressed nor
+     * with their chunks delivered in order to consumers in a queue group). The consumer reassembles
+     * them into a stream body, its NATS message being the last chunk. Chunks are recognized by a
+     * 0xC1 'C' header: a binary payload starting with it, published by a producer which is not
+     * chunked, is taken for a chunk (and most likely dropped as an incomplete transfer)
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
+    public void setChunked(boolean chunked) {
+        this.chunked = chunked;
+    }
+
+    /**
+     * Size in bytes of the chunks, 0 for the largest the server accepts (its max_payload)
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * How long a chunked transfer may wait for its next chunk before being dropped as incomplete,
+     * and reported to the exception handler (in milliseconds)
+     */
+    public long getChunkTimeout() {
+        return chunkTimeout;
+    }
+
+    public void setChunkTimeout(long chunkTimeout) {
+        this.chunkTimeout = chunkTimeout;
+    }
+
+    /**
+     * Size in bytes from which a chunked transfer being reassembled is spooled to a temporary file
+     * (in the stream caching spool directory, if any), deleted once the exchange is done
+     */
+    public int getChunkSpoolThreshold() {
+        return chunkSpoolThreshold;
+    }
+
+    public void setChunkSpoolThreshold(int chunkSpoolThreshold) {
+        this.chunkSpoolThreshold = chunkSpoolThreshold;
+    }
+
+    /**
+     * Size in bytes the chunked transfers being reassembled by a consumer may take in memory
+     * together, the next chunks being spooled to temporary files beyond it
+     */
+    public long getChunkMemoryLimit() {
+        return chunkMemoryLimit;
+    }
+
+    public void setChunkMemoryLimit(long chunkMemoryLimit) {
+        this.chunkMemoryLimit = chunkMemoryLimit;
+    }
+
+    /**
+     * When trace logging is enabled, only one consumed or published message out of
+     * logSampleRate is logged
+     */
+    public int getLogSampleRate() {
+        return logSampleRate;
+    }
+
+    public void setLogSampleRate(int logSampleRate) {
+        this.logSampleRate = logSampleRate;
+    }
+
     private static <T> void addPropertyIfNotNull(Properties props, String key, T value) {
         if (value != null) {
-            props.put(key, value);
+            // The connection factory only reads String properties
+            props.setProperty(key, value.toString());
         }
     }
 
@@ -229,6 +748,7 @@ public class NatsConfiguration {
         addPropertyIfNotNull(props, NatsPropertiesConstants.NATS_PROPERTY_MAX_RECONNECT_ATTEMPTS, getMaxReconnectAttempts());
         addPropertyIfNotNull(props, NatsPropertiesConstants.NATS_PROPERTY_RECONNECT_TIME_WAIT, getReconnectTimeWait());
         addPropertyIfNotNull(props, NatsPropertiesConstants.NATS_PROPERTY_PING_INTERVAL, getPingInterval());
+        addPropertyIfNotNull(props, NatsPropertiesConstants.NATS_PROPERTY_CONNECTION_TIMEOUT, getConnectionTimeout());
         addPropertyIfNotNull(props, NatsPropertiesConstants.NATS_PROPERTY_DONT_RANDOMIZE_SERVERS, getNoRandomizeServers());
         
       //Do not automatically reconnect to the same uri in cloud environment
@@ -20,4 +20,11 @@ public interface NatsConstants {
 
     String NATS_MESSAGE_TIMESTAMP = "CamelNatsMessageTimestamp";
     String NATS_SUBSCRIPTION_ID = "CamelNatsSubscriptionId";
+    String NATS_SUBJECT = "CamelNatsSubject";
+    String NATS_REPLY_SUBJECT = "CamelNatsReplySubject";
+    String NATS_MESSAGE_SUBJECT = "CamelNatsMessageSubject";
+    String NATS_MESSAGE_REPLY_TO = "CamelNatsMessageReplyTo";
+    String NATS_SUBSCRIPTION_SUBJECT = "CamelNatsSubscriptionSubject";
+    String NATS_BATCH_SIZE = "CamelNatsBatchSize";
+    String NATS_BATCH_COMPLETED_BY = "CamelNatsBatchCompletedBy";
 }
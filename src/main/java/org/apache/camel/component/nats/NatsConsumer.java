@@ -16,29 +16,53 @@
  */
 package org.apache.camel.component.nats;
 
+import java.nio.charset.Charset;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import io.nats.connector.CamelNatsAdapter;
 
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
 import org.apache.camel.Processor;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
 import org.apache.camel.impl.DefaultConsumer;
+import org.apache.camel.util.ObjectHelper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+@ManagedResource(description = "Managed NATS Consumer")
 public class NatsConsumer extends DefaultConsumer {
 
     private static Logger logger = LoggerFactory.getLogger(NatsConsumer.class);
 
-    private ExecutorService executor;    
-    private CountDownLatch startupLatch = null;
-    private CountDownLatch shutdownLatch = null;				
-
-    private CamelNatsAdapter natsAdapters[] = null;
+    private volatile CamelNatsAdapter natsAdapters[] = null;
     private int poolSize;
+    private ExecutorService workerExecutor = null;
+    private ExecutorService startupExecutor = null;
+    private NatsLocalDispatcher localDispatcher = null;
+    private NatsOrderedDispatcher orderedDispatcher = null;
+    private ScheduledExecutorService batchTimer = null;
+    private final List<NatsBatcher> batchers = new CopyOnWriteArrayList<NatsBatcher>();
+    private ScheduledExecutorService chunkTimer = null;
+    private final List<NatsChunkAssembler> chunkAssemblers = new CopyOnWriteArrayList<NatsChunkAssembler>();
+    private final NatsMetrics metrics = new NatsMetrics();
+    private NatsLogSampler logSampler = new NatsLogSampler(1);
+    private Charset charset = null;
 
     public NatsConsumer(NatsEndpoint endpoint, Processor processor) {
         super(endpoint, processor);
@@ -55,92 +79,369 @@ public class NatsConsumer extends DefaultConsumer {
         super.doStart();
         logger.info("Starting Nats Consumer");
 
-        NatsConfiguration config = getEndpoint().getNatsConfiguration();       	 
-   	 	setStartupLatch(new CountDownLatch(config.getPoolSize()));  	 	
    	 	Properties natsProperties = getEndpoint().getNatsConfiguration().createProperties();
-   	 	executor = getEndpoint().createConsumerExecutor();
    	 	poolSize = getEndpoint().getNatsConfiguration().getPoolSize();
    	 	natsAdapters = new CamelNatsAdapter[poolSize];
+   	 	NatsConfiguration config = getEndpoint().getNatsConfiguration();
+   	 	logSampler = new NatsLogSampler(config.getLogSampleRate());
+   	 	charset = ObjectHelper.isNotEmpty(config.getCharset()) ? Charset.forName(config.getCharset()) : null;
+   	 	if (config.getConcurrentConsumers() > 0) {
+   	 		workerExecutor = getEndpoint().createWorkerExecutor();
+   	 		if (ObjectHelper.isNotEmpty(config.getOrderingKey())) {
+   	 			orderedDispatcher = new NatsOrderedDispatcher(this, config.getOrderingKey(),
+   	 					config.getConcurrentConsumers(), config.getMaxQueueSize());
+   	 			orderedDispatcher.start(workerExecutor);
+   	 		}
+   	 	} else if (isLocalDelivery()) {
+   	 		// Local messages come from the producers' threads: a single lane keeps processing
+   	 		// them one at a time and in order with the ones from the server, as a subscription does
+   	 		workerExecutor = getEndpoint().createDeliveryExecutor();
+   	 		orderedDispatcher = new NatsOrderedDispatcher(this, null, 1, config.getMaxQueueSize());
+   	 		orderedDispatcher.start(workerExecutor);
+   	 	}
+   	 	if (config.getBatchSize() > 1 && config.getBatchTimeout() > 0) {
+   	 		batchTimer = getEndpoint().createBatchTimer();
+   	 	}
+   	 	if (config.isChunked() && config.getChunkTimeout() > 0) {
+   	 		long period = Math.max(10, config.getChunkTimeout() / 10);
+   	 		chunkTimer = getEndpoint().createChunkTimer();
+   	 		chunkTimer.scheduleWithFixedDelay(new Runnable() {
+   	 			@Override
+   	 			public void run() {
+   	 				long now = System.currentTimeMillis();
+   	 				for (NatsChunkAssembler assembler : chunkAssemblers) {
+   	 					assembler.expire(now);
+   	 				}
+   	 			}
+   	 		}, period, period, TimeUnit.MILLISECONDS);
+   	 	}
    	 	
-   	 	for (short i = 0; i < poolSize; i++){
-   	 		natsAdapters[i] = new CamelNatsAdapter(this, natsProperties, logger);                  	 	
-	   	 	executor.submit((Runnable)natsAdapters[i].getConnector());   
+   	 	try {
+   	 		for (short i = 0; i < poolSize; i++){
+   	 			natsAdapters[i] = new CamelNatsAdapter(this, natsProperties, logger);                  	 	
+   	 			natsAdapters[i].setConnectionRegistry(getEndpoint().getConnectionRegistry(), i);
+   	 		}
+   	 		connectAdapters(natsAdapters);
+   	 		localDispatcher = isLocalDelivery() ? getEndpoint().getLocalDispatcher() : null;
+   	 		if (localDispatcher != null) {
+   	 			for (CamelNatsAdapter adapter : natsAdapters) {
+   	 				for (String subject : config.getSubjects()) {
+   	 					localDispatcher.subscribe(config.getServers(), subject, adapter);
+   	 				}
+   	 			}
+   	 		}
    	 	}
-   	   	 	  	 	
-   	 	// Wait for connector to fully initialize
-        boolean initialized = true;
-        try{
-        	//initialized = startupLatch.await(10, TimeUnit.SECONDS);
-        	getStartupLatch().await();
-        }
-        catch(InterruptedException e){
-        	logger.error("Nats consumer initilization was interrupted"); 
-        	throw new Exception("Startup failure in NATS Connector");
-        }
-        
-        if (initialized == false){
-        	logger.info("Nats Consumer initilization is taking longer then expected"); 
-        	throw new Exception("Startup failure in NATS Connector");
+   	 	catch(Exception e){
+        	logger.error("Nats Consumer initilization failed"); 
+        	doStop();
+        	throw new Exception("Startup failure in NATS Connector", e);
         }
         
         logger.info("Started NATS Consumer");
     }
 
+    /**
+     * Connects the adapters in parallel, returning once startupMinConnections of them are up
+     * while the other ones keep connecting in the background. Fails as soon as too many of
+     * them failed, or when the startupTimeout elapsed.
+     */
+    private void connectAdapters(final CamelNatsAdapter adapters[]) throws Exception {
+    	NatsConfiguration config = getEndpoint().getNatsConfiguration();
+    	final int total = adapters.length;
+    	int required = config.getStartupMinConnections() > 0 ? Math.min(config.getStartupMinConnections(), total) : total;
+    	long timeout = config.getStartupTimeout();
+    	long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    	startupExecutor = getEndpoint().createStartupExecutor(total);
+    	CompletionService<CamelNatsAdapter> connections = new ExecutorCompletionService<CamelNatsAdapter>(startupExecutor);
+    	for (int i = 0; i < total; i++) {
+    		final CamelNatsAdapter adapter = adapters[i];
+    		final int index = i;
+    		connections.submit(new Callable<CamelNatsAdapter>() {
+    			@Override
+    			public CamelNatsAdapter call() throws Exception {
+    				try {
+    					adapter.start();
+    				} catch (Exception e) {
+    					logger.warn("NATS connection {} of {} failed: {}", index + 1, total, e.getMessage());
+    					throw e;
+    				}
+    				synchronized (NatsConsumer.this) {
+    					// Connected after the consumer was stopped
+    					if (natsAdapters != adapters) {
+    						adapter.shutdown();
+    					}
+    				}
+    				return adapter;
+    			}
+    		});
+    	}
+    	// The threads end with the last connection attempt
+    	startupExecutor.shutdown();
+
+    	int connected = 0;
+    	int failed = 0;
+    	Exception failure = null;
+    	while (connected < required) {
+    		Future<CamelNatsAdapter> done;
+    		if (timeout > 0) {
+    			done = connections.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    		} else {
+    			done = connections.take();
+    		}
+    		if (done == null) {
+    			throw new TimeoutException(connected + " of " + total + " NATS connections up after "
+    					+ timeout + " ms, " + required + " required");
+    		}
+    		try {
+    			done.get();
+    			connected++;
+    		} catch (ExecutionException e) {
+    			Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    			if (failure == null) {
+    				failure = cause;
+    			} else {
+    				failure.addSuppressed(cause);
+    			}
+    			if (total - ++failed < required) {
+    				throw new Exception(failed + " of " + total + " NATS connections failed, "
+    						+ required + " required", failure);
+    			}
+    		}
+    	}
+    	if (connected < total) {
+    		logger.info("{} of {} NATS connections up, the other ones still connecting", connected, total);
+    	}
+    }
+
     @Override
     protected void doStop() throws Exception {
     	 logger.debug("Stopping Nats Consumer");
     	 super.doStop();
     	 
-    	 setShutdownLatch(new CountDownLatch(poolSize));
-    	
+    	 if (localDispatcher != null && natsAdapters != null) {
+    		 for (CamelNatsAdapter adapter : natsAdapters) {
+    			 localDispatcher.unsubscribe(adapter);
+    		 }
+    	 }
+    	 localDispatcher = null;
+
+    	 if (startupExecutor != null) {
+    		 getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(startupExecutor);
+    	 }
+    	 startupExecutor = null;
+
+    	 CamelNatsAdapter adapters[];
+    	 synchronized (this) {
+    		 adapters = natsAdapters;
+    		 natsAdapters = null;
+    	 }
+    	 if (adapters == null)
+    		 return;
+    	 
     	 for (short i = 0; i < poolSize; i++){	   	
-	         if (natsAdapters[i] != null) {
-	        	 natsAdapters[i].shutdown();
+	         if (adapters[i] != null) {
+	        	 adapters[i].shutdown();
 	         }
     	 }
-         
-         boolean shutdown = true;
-         try{
-         	//shutdown = shutdownLatch.await(10, TimeUnit.SECONDS);
-        	 shutdownLatch.await();
-         }
-         catch(InterruptedException e){
-         	logger.error("Nats consumer shutdown was interrupted"); 
-         }
-         
-         if (shutdown == false){
-         	logger.error("Nats Consumer shutdown timed out"); 
-         }
-                 
-         if (executor != null) {
-            if (getEndpoint() != null && getEndpoint().getCamelContext() != null) {
-                getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(executor);
-            } else {
-                executor.shutdownNow();
-            }
-         }
-         executor = null;      
-    }
-
-
-	public CountDownLatch getStartupLatch() {
-		return startupLatch;
-	}
-
-	public void setStartupLatch(CountDownLatch startupLatch) {
-		this.startupLatch = startupLatch;
-	}
-
-	public CountDownLatch getShutdownLatch() {
-		return shutdownLatch;
-	}
-
-	public void setShutdownLatch(CountDownLatch shutdownLatch) {
-		this.shutdownLatch = shutdownLatch;
-	}
-  
- 	
-		
+    	 
+    	 // Unsubscribed, so the partial batches are complete
+    	 for (NatsBatcher batcher : batchers) {
+    		 batcher.complete();
+    	 }
+    	 batchers.clear();
+    	 if (batchTimer != null) {
+    		 getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(batchTimer);
+    	 }
+    	 batchTimer = null;
+
+    	 if (chunkTimer != null) {
+    		 getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(chunkTimer);
+    	 }
+    	 chunkTimer = null;
+    	 for (NatsChunkAssembler assembler : chunkAssemblers) {
+    		 assembler.clear();
+    	 }
+    	 chunkAssemblers.clear();
+    	 
+    	 if (orderedDispatcher != null) {
+    		 orderedDispatcher.stop();
+    	 }
+    	 orderedDispatcher = null;
+    	 if (workerExecutor != null) {
+    		 getEndpoint().getCamelContext().getExecutorServiceManager().shutdownGraceful(workerExecutor);
+    	 }
+    	 workerExecutor = null;
+    }
+
+    /**
+     * Processes the exchange on the subscription thread, or hands it over to the
+     * worker pool when concurrentConsumers is set, or to the delivery thread with
+     * localDelivery.
+     */
+    public void dispatch(final Exchange exchange) {
+    	if (workerExecutor == null) {
+    		process(exchange);
+    		return;
+    	}
+    	if (orderedDispatcher != null) {
+    		orderedDispatcher.dispatch(exchange);
+    		return;
+    	}
+    	
+    	try {
+    		workerExecutor.execute(new Runnable() {
+    			@Override
+    			public void run() {
+    				process(exchange);
+    			}
+    		});
+    	}
+    	catch (RejectedExecutionException e) {
+    		getExceptionHandler().handleException("Worker pool rejected the message", exchange, e);
+    	}
+    }
+
+    /**
+     * Makes the exchange of a received request InOut, its result being published to the
+     * reply subject through the given adapter once the route is done.
+     */
+    public void prepareReply(Exchange exchange, CamelNatsAdapter adapter, String replyTo) {
+    	exchange.setPattern(ExchangePattern.InOut);
+    	exchange.addOnCompletion(new NatsReplySender(adapter, replyTo, charset, getEndpoint().getNatsConfiguration().getCodec()));
+    }
+
+    /**
+     * A batcher for the messages of one subscription, null when batchSize is not set
+     */
+    public NatsBatcher createBatcher() {
+    	NatsConfiguration config = getEndpoint().getNatsConfiguration();
+    	if (config.getBatchSize() <= 1) {
+    		return null;
+    	}
+    	NatsBatcher batcher = new NatsBatcher(this, config.getBatchSize(), config.getBatchTimeout(), batchTimer);
+    	batchers.add(batcher);
+    	return batcher;
+    }
+
+    /**
+     * The assembler of the chunked transfers received through the adapter, null when chunked
+     * is not set
+     */
+    public NatsChunkAssembler createChunkAssembler(CamelNatsAdapter adapter) {
+    	if (!getEndpoint().getNatsConfiguration().isChunked()) {
+    		return null;
+    	}
+    	NatsChunkAssembler assembler = new NatsChunkAssembler(this, adapter);
+    	chunkAssemblers.add(assembler);
+    	return assembler;
+    }
+
+    public NatsLogSampler getLogSampler() {
+    	return logSampler;
+    }
+
+    /**
+     * Whether the consumer also receives the messages published with localDelivery by the
+     * producers of the same component, which is not the case of queue group members (the
+     * server picking one of them) nor of subscriptions limited to maxMessages
+     */
+    public boolean isLocalDelivery() {
+    	NatsConfiguration config = getEndpoint().getNatsConfiguration();
+    	return config.isLocalDelivery() && ObjectHelper.isEmpty(config.getQueueName())
+    			&& ObjectHelper.isEmpty(config.getMaxMessages());
+    }
+
+    public NatsMetrics getMetrics() {
+    	return metrics;
+    }
+
+    @ManagedAttribute(description = "Messages received")
+    public long getMessagesIn() {
+    	return metrics.getMessagesIn();
+    }
+
+    @ManagedAttribute(description = "Bytes received")
+    public long getBytesIn() {
+    	return metrics.getBytesIn();
+    }
+
+    @ManagedAttribute(description = "Reconnections to the NATS server")
+    public long getReconnects() {
+    	return metrics.getReconnects();
+    }
+
+    @ManagedAttribute(description = "Disconnections from the NATS server")
+    public long getDisconnects() {
+    	return metrics.getDisconnects();
+    }
+
+    /**
+     * Number of times a subscription of this consumer reached its pending limits
+     */
+    @ManagedAttribute(description = "Times a subscription reached its pending limits, dropping or pausing")
+    public long getSlowConsumerCount() {
+    	return metrics.getSlowConsumers();
+    }
+
+    /**
+     * Messages received by the subscriptions and not processed yet
+     */
+    @ManagedAttribute(description = "Messages received by the subscriptions and not processed yet")
+    public int getPendingMessages() {
+    	CamelNatsAdapter adapters[] = natsAdapters;
+    	int pending = 0;
+    	if (adapters != null) {
+    		for (CamelNatsAdapter adapter : adapters) {
+    			if (adapter != null) {
+    				pending += adapter.getPendingMessages();
+    			}
+    		}
+    	}
+    	return pending;
+    }
+
+    @ManagedOperation(description = "Messages received by the subscription to the subject and not processed yet")
+    public int pendingMessages(String subject) {
+    	CamelNatsAdapter adapters[] = natsAdapters;
+    	int pending = 0;
+    	if (adapters != null) {
+    		for (CamelNatsAdapter adapter : adapters) {
+    			if (adapter != null) {
+    				pending += adapter.getPendingMessages(subject);
+    			}
+    		}
+    	}
+    	return pending;
+    }
+
+    /**
+     * Messages dropped by the subscriptions because of their pending limits
+     */
+    @ManagedAttribute(description = "Messages dropped by the subscriptions because of their pending limits")
+    public long getDroppedMessages() {
+    	CamelNatsAdapter adapters[] = natsAdapters;
+    	long dropped = 0;
+    	if (adapters != null) {
+    		for (CamelNatsAdapter adapter : adapters) {
+    			if (adapter != null) {
+    				dropped += adapter.getDroppedMessages();
+    			}
+    		}
+    	}
+    	return dropped;
+    }
+
+    @ManagedOperation(description = "Reset the counters")
+    public void resetStatistics() {
+    	metrics.reset();
+    }
+
+    void process(Exchange exchange) {
+    	try {
+    		getProcessor().process(exchange);
+    	} catch (Exception e) {
+    		getExceptionHandler().handleException("Error during processing", exchange, e);
+    	}
+    }
 }
-	
-	
\ No newline at end of file
@@ -17,15 +17,22 @@
 package org.apache.camel.component.nats;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import io.nats.connector.NatsConnectionRegistry;
 
 import org.apache.camel.Consumer;
 import org.apache.camel.Processor;
 import org.apache.camel.Producer;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
 import org.apache.camel.impl.DefaultEndpoint;
 import org.apache.camel.spi.UriEndpoint;
 import org.apache.camel.spi.UriParam;
 
 @UriEndpoint(scheme = "nats", title = "Nats", syntax = "nats:servers", label = "messaging", consumerClass = NatsConsumer.class)
+@ManagedResource(description = "Managed NATS Endpoint")
 public class NatsEndpoint extends DefaultEndpoint {
 
     @UriParam
@@ -46,12 +53,99 @@ public class NatsEndpoint extends DefaultEndpoint {
         return new NatsConsumer(this, processor);
     }
     
-    public ExecutorService createConsumerExecutor() {
-        return getCamelContext().getExecutorServiceManager().newFixedThreadPool(this, "NatsTopic[" + configuration.getTopic() + "]", configuration.getPoolSize());
+    public ExecutorService createWorkerExecutor() {
+        int concurrentConsumers = configuration.getConcurrentConsumers();
+        return getCamelContext().getExecutorServiceManager().newThreadPool(this, "NatsConsumer[" + configuration.getTopic() + "]",
+            new ThreadPoolProfileBuilder("NatsConsumer").poolSize(concurrentConsumers).maxPoolSize(concurrentConsumers)
+                .maxQueueSize(configuration.getMaxQueueSize()).rejectedPolicy(configuration.getRejectedPolicy()).build());
     }
-    
-    public ExecutorService createProducerExecutor() {
-        return getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "NatsProducer[" + configuration.getTopic() + "]");
+
+    public ExecutorService createDeliveryExecutor() {
+        return getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "NatsConsumerDelivery[" + configuration.getTopic() + "]");
+    }
+
+    public ExecutorService createStartupExecutor(int connections) {
+        return getCamelContext().getExecutorServiceManager().newFixedThreadPool(this, "NatsConsumerStartup[" + configuration.getTopic() + "]", connections);
+    }
+
+    public ScheduledExecutorService createFlushExecutor() {
+        return getCamelContext().getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "NatsFlusher[" + configuration.getTopic() + "]");
+    }
+
+    /**
+     * The threads completing the exchanges once flushed in the background, off the flusher
+     * thread, with the pool size of the default thread pool profile and no queue limit
+     */
+    public ExecutorService createCompletionExecutor() {
+        int poolSize = getCamelContext().getExecutorServiceManager().getDefaultThreadPoolProfile().getPoolSize();
+        return getCamelContext().getExecutorServiceManager().newThreadPool(this, "NatsProducerCompletion[" + configuration.getTopic() + "]",
+            new ThreadPoolProfileBuilder("NatsProducerCompletion").poolSize(poolSize).maxPoolSize(poolSize).maxQueueSize(-1).build());
+    }
+
+    public ScheduledExecutorService createRequestTimer() {
+        return getCamelContext().getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "NatsRequestTimer[" + configuration.getTopic() + "]");
+    }
+
+    public ScheduledExecutorService createBatchTimer() {
+        return getCamelContext().getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "NatsBatchTimer[" + configuration.getTopic() + "]");
+    }
+
+    public ScheduledExecutorService createChunkTimer() {
+        return getCamelContext().getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "NatsChunkTimer[" + configuration.getTopic() + "]");
+    }
+
+    /**
+     * The registry to take shared connections from, null if each connector opens its own.
+     */
+    public NatsConnectionRegistry getConnectionRegistry() {
+        if (!configuration.isSharedConnection() || configuration.isCloudEnvironment()) {
+            return null;
+        }
+        return ((NatsComponent) getComponent()).getConnectionRegistry();
+    }
+
+    @ManagedAttribute(description = "Subject(s)")
+    public String getTopic() {
+        return configuration.getTopic();
+    }
+
+    @ManagedAttribute(description = "NATS servers")
+    public String getServers() {
+        return configuration.getServers();
+    }
+
+    @ManagedAttribute(description = "Connections per consumer or producer")
+    public int getPoolSize() {
+        return configuration.getPoolSize();
+    }
+
+    @ManagedAttribute(description = "Flush policy of the producers")
+    public String getFlushPolicy() {
+        return configuration.getFlushPolicy() == null ? null : configuration.getFlushPolicy().name();
+    }
+
+    @ManagedAttribute(description = "Whether connections are shared with the other endpoints")
+    public boolean isSharedConnection() {
+        return configuration.isSharedConnection();
+    }
+
+    /**
+     * Number of connections shared through the component, 0 when connections are not shared
+     */
+    @ManagedAttribute(description = "Connections shared through the component")
+    public int getSharedConnectionCount() {
+        NatsConnectionRegistry registry = getConnectionRegistry();
+        return registry == null ? 0 : registry.getConnectionCount();
+    }
+
+    /**
+     * The dispatcher delivering messages within the component, null without localDelivery.
+     */
+    NatsLocalDispatcher getLocalDispatcher() {
+        if (!configuration.isLocalDelivery()) {
+            return null;
+        }
+        return ((NatsComponent) getComponent()).getLocalDispatcher();
     }
 
     @Override
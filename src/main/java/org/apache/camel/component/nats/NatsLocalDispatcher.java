@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.nats.connector.CamelNatsAdapter;
+
+/**
+ * Delivers what the producers of a component publish with localDelivery straight to the
+ * consumers of the same component subscribed to the subject on the same servers, without
+ * the round trip through the server. The messages are still published for the remote
+ * subscribers, tagged (see {@link NatsLocalTag}) so that the local consumers drop the copies
+ * coming back to them.
+ *
+ * A message is only delivered locally once it has been published, the local consumers
+ * expecting its copy from before it is published since the copy may come back first.
+ */
+final class NatsLocalDispatcher {
+
+    private final CopyOnWriteArrayList<LocalSubscription> subscriptions = new CopyOnWriteArrayList<LocalSubscription>();
+    private final long origin = new Random().nextLong();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    void subscribe(String servers, String subject, CamelNatsAdapter adapter) {
+        subscriptions.add(new LocalSubscription(servers, subject, adapter));
+    }
+
+    void unsubscribe(CamelNatsAdapter adapter) {
+        for (LocalSubscription subscription : subscriptions) {
+            if (subscription.adapter == adapter) {
+                subscriptions.remove(subscription);
+            }
+        }
+    }
+
+    /**
+     * The local delivery of a message to be published on the subject, its local subscribers
+     * now expecting its copy, or null if the subject has no local subscriber.
+     */
+    Delivery prepare(String servers, String subject) {
+        if (subscriptions.isEmpty()) {
+            return null;
+        }
+        String[] tokens = null;
+        List<LocalSubscription> matching = null;
+        for (LocalSubscription subscription : subscriptions) {
+            if (!subscription.servers.equals(servers)) {
+                continue;
+            }
+            if (tokens == null) {
+                tokens = subject.split("\\.");
+            }
+            if (NatsSubjects.matches(subscription.tokens, tokens)) {
+                if (matching == null) {
+                    matching = new ArrayList<LocalSubscription>(2);
+                }
+                matching.add(subscription);
+            }
+        }
+        if (matching == null) {
+            return null;
+        }
+
+        long sequence = nextSequence.incrementAndGet();
+        for (LocalSubscription subscription : matching) {
+            subscription.adapter.expectEcho(origin, sequence);
+        }
+        return new Delivery(subject, sequence, matching);
+    }
+
+    /**
+     * A message published with localDelivery, to be handed to its local subscribers once
+     * published, or forgotten if it could not be.
+     */
+    final class Delivery {
+        private final String subject;
+        private final long sequence;
+        private final List<LocalSubscription> subscriptions;
+
+        Delivery(String subject, long sequence, List<LocalSubscription> subscriptions) {
+            this.subject = subject;
+            this.sequence = sequence;
+            this.subscriptions = subscriptions;
+        }
+
+        /**
+         * The payload to publish
+         */
+        byte[] tag(byte[] payload) {
+            return NatsLocalTag.tag(payload, origin, sequence);
+        }
+
+        /**
+         * Hands the message to the local subscribers, which process it on their own thread.
+         */
+        void deliver(String replyTo, byte[] payload) {
+            for (LocalSubscription subscription : subscriptions) {
+                subscription.adapter.onLocalMessage(subscription.subject, subject, replyTo, payload);
+            }
+        }
+
+        void cancel() {
+            for (LocalSubscription subscription : subscriptions) {
+                subscription.adapter.cancelEcho(sequence);
+            }
+        }
+    }
+
+    private static final class LocalSubscription {
+        private final String servers;
+        private final String subject;
+        private final String[] tokens;
+        private final CamelNatsAdapter adapter;
+
+        LocalSubscription(String servers, String subject, CamelNatsAdapter adapter) {
+            this.servers = servers;
+            this.subject = subject;
+            this.tokens = subject.split("\\.");
+            this.adapter = adapter;
+        }
+    }
+}
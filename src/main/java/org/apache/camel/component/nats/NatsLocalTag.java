@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import io.nats.client.Message;
+
+/**
+ * The header a producer with localDelivery and localDeliveryTag puts in front of the payloads
+ * it also delivers locally, so that the local consumers recognize the copies the server sends
+ * back to them.
+ *
+ * It is 18 bytes long: a 2 bytes marker (0xC1, which never appears in UTF-8 text, and 'L'),
+ * the 8 bytes id of the component which delivered the message locally and the 8 bytes sequence
+ * number of the message in that component. Only consumers with localDelivery strip it, so a
+ * binary payload from another publisher which happens to start with the marker loses its first
+ * 18 bytes on those consumers only.
+ */
+public final class NatsLocalTag {
+
+    public static final int HEADER_SIZE = 18;
+
+    private static final byte MARKER = (byte) 0xC1;
+    private static final byte MARKER_L = 'L';
+
+    private NatsLocalTag() {
+    }
+
+    static byte[] tag(byte[] payload, long origin, long sequence) {
+        byte[] tagged = new byte[HEADER_SIZE + payload.length];
+        tagged[0] = MARKER;
+        tagged[1] = MARKER_L;
+        writeLong(tagged, 2, origin);
+        writeLong(tagged, 10, sequence);
+        System.arraycopy(payload, 0, tagged, HEADER_SIZE, payload.length);
+        return tagged;
+    }
+
+    public static boolean isTagged(byte[] data) {
+        return data != null && data.length >= HEADER_SIZE && data[0] == MARKER && data[1] == MARKER_L;
+    }
+
+    public static long origin(byte[] data) {
+        return readLong(data, 2);
+    }
+
+    public static long sequence(byte[] data) {
+        return readLong(data, 10);
+    }
+
+    /**
+     * Replaces the tagged payload of the message by the original one
+     */
+    public static void strip(Message message) {
+        byte[] data = message.getData();
+        message.setData(data, HEADER_SIZE, data.length - HEADER_SIZE);
+    }
+
+    private static void writeLong(byte[] data, int offset, long value) {
+        for (int i = 0; i < 8; i++) {
+            data[offset + i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the consumed or published messages getting a trace log, one out of logSampleRate,
+ * so that tracing a busy endpoint does not flood the log. Only asked once trace is enabled.
+ */
+public final class NatsLogSampler {
+
+    private final int rate;
+    private final AtomicLong count = new AtomicLong();
+
+    public NatsLogSampler(int rate) {
+        this.rate = Math.max(1, rate);
+    }
+
+    public boolean sample() {
+        return rate == 1 || count.getAndIncrement() % rate == 0;
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.Map;
+
+import io.nats.client.Message;
+import io.nats.client.Subscription;
+
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.impl.DefaultMessage;
+
+/**
+ * The in message of a consumed exchange, its body being the received NATS message, or its
+ * payload decoded by the codec of the endpoint.
+ *
+ * Nothing is computed on receipt: the headers are only created when the route first
+ * looks at them, the accessors giving the same information without any map or boxing.
+ */
+public class NatsMessage extends DefaultMessage {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Message natsMessage;
+    private final long receivedTime;
+    private final String subscriptionSubject;
+    private boolean compressed;
+    private final NatsCodec codec;
+
+    public NatsMessage(Message natsMessage, long receivedTime) {
+        this(natsMessage, receivedTime, null);
+    }
+
+    public NatsMessage(Message natsMessage, long receivedTime, String subscriptionSubject) {
+        this(natsMessage, receivedTime, subscriptionSubject, false);
+    }
+
+    /**
+     * @param subscriptionSubject the subscribed subject the message matched, when delivered
+     *        without a jnats subscription (local delivery)
+     * @param compressed whether the payload is compressed, to be decompressed on first use
+     */
+    public NatsMessage(Message natsMessage, long receivedTime, String subscriptionSubject, boolean compressed) {
+        this(natsMessage, receivedTime, subscriptionSubject, compressed, null);
+    }
+
+    /**
+     * @param codec decoding the payload into the body, the body being the NATS message if null
+     */
+    public NatsMessage(Message natsMessage, long receivedTime, String subscriptionSubject, boolean compressed,
+                       NatsCodec codec) {
+        this.natsMessage = natsMessage;
+        this.codec = codec;
+        this.receivedTime = receivedTime;
+        this.subscriptionSubject = subscriptionSubject;
+        this.compressed = compressed;
+    }
+
+    /**
+     * The received NATS message
+     */
+    public Message getNatsMessage() {
+        decompress();
+        return natsMessage;
+    }
+
+    public String getSubject() {
+        return natsMessage.getSubject();
+    }
+
+    public String getReplyTo() {
+        return natsMessage.getReplyTo();
+    }
+
+    /**
+     * The received bytes, not copied
+     */
+    public byte[] getPayload() {
+        decompress();
+        return natsMessage.getData();
+    }
+
+    /**
+     * Whether the payload is still compressed, nothing having read it yet
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    private void decompress() {
+        if (compressed) {
+            NatsCompressor.decompress(natsMessage);
+            compressed = false;
+        }
+    }
+
+    public Subscription getSubscription() {
+        return natsMessage.getSubscription();
+    }
+
+    /**
+     * The subject or wildcard subscribed to which matched the subject of the message
+     */
+    public String getSubscriptionSubject() {
+        Subscription subscription = natsMessage.getSubscription();
+        return subscription == null ? subscriptionSubject : subscription.getSubject();
+    }
+
+    /**
+     * When the message was handed to the consumer, in milliseconds since the epoch
+     */
+    public long getReceivedTime() {
+        return receivedTime;
+    }
+
+    @Override
+    protected Object createBody() {
+        if (codec == null) {
+            return getNatsMessage();
+        }
+        decompress();
+        try {
+            return codec.decode(getExchange(), dataOf(natsMessage));
+        } catch (Exception e) {
+            throw new RuntimeCamelException("Unable to decode the NATS message on " + natsMessage.getSubject(), e);
+        }
+    }
+
+    static byte[] dataOf(Message message) {
+        byte[] data = message.getData();
+        return data != null ? data : EMPTY;
+    }
+
+    @Override
+    protected void populateInitialHeaders(Map<String, Object> map) {
+        map.put(NatsConstants.NATS_MESSAGE_TIMESTAMP, receivedTime);
+        map.put(NatsConstants.NATS_SUBSCRIPTION_ID, natsMessage.getSubscription());
+        map.put(NatsConstants.NATS_MESSAGE_SUBJECT, natsMessage.getSubject());
+        if (getSubscriptionSubject() != null) {
+            map.put(NatsConstants.NATS_SUBSCRIPTION_SUBJECT, getSubscriptionSubject());
+        }
+        if (natsMessage.getReplyTo() != null) {
+            map.put(NatsConstants.NATS_MESSAGE_REPLY_TO, natsMessage.getReplyTo());
+        }
+    }
+
+    @Override
+    public DefaultMessage newInstance() {
+        // Copies made by the route are plain messages
+        return new DefaultMessage();
+    }
+
+    @Override
+    public String toString() {
+        return "NatsMessage[" + natsMessage.getSubject() + "]";
+    }
+}
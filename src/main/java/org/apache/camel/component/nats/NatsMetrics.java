@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of a consumer or a producer, striped so that the threads publishing or
+ * receiving do not contend on them.
+ */
+public final class NatsMetrics {
+
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder slowConsumers = new LongAdder();
+    private final NatsLatencyHistogram publishLatency = new NatsLatencyHistogram();
+    private final NatsLatencyHistogram flushLatency = new NatsLatencyHistogram();
+
+    public void onReceived(int bytes) {
+        messagesIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    public void onPublished(int messages, long bytes) {
+        messagesOut.add(messages);
+        bytesOut.add(bytes);
+    }
+
+    public void onReconnect() {
+        reconnects.increment();
+    }
+
+    public void onDisconnect() {
+        disconnects.increment();
+    }
+
+    public void onSlowConsumer() {
+        slowConsumers.increment();
+    }
+
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    public long getSlowConsumers() {
+        return slowConsumers.sum();
+    }
+
+    /**
+     * Time spent publishing an exchange, from the producer being called to its messages
+     * being written (and flushed, depending on the flush policy)
+     */
+    public NatsLatencyHistogram getPublishLatency() {
+        return publishLatency;
+    }
+
+    /**
+     * Time of the PING/PONG round trips flushing the published messages
+     */
+    public NatsLatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    public void reset() {
+        messagesIn.reset();
+        bytesIn.reset();
+        messagesOut.reset();
+        bytesOut.reset();
+        reconnects.reset();
+        disconnects.reset();
+        slowConsumers.reset();
+        publishLatency.reset();
+        flushLatency.reset();
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import io.nats.client.Message;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+
+/**
+ * Dispatches the received exchanges over a fixed number of lanes, each processed by
+ * its own thread. Exchanges with the same ordering key always go to the same lane, so
+ * they are processed in the order they were received while other keys run in parallel.
+ *
+ * The ordering key is either "subject", "subjectToken:n" (the n-th token of the subject,
+ * starting at 0), "header:name" or a simple language expression. A single lane needs none,
+ * processing everything in order.
+ */
+class NatsOrderedDispatcher {
+
+    private final NatsConsumer consumer;
+    private final String orderingKey;
+    private final int maxQueueSize;
+    private final Lane[] lanes;
+
+    private int subjectToken = -1;
+    private String header;
+    private Expression expression;
+
+    NatsOrderedDispatcher(NatsConsumer consumer, String orderingKey, int laneCount, int maxQueueSize) {
+        this.consumer = consumer;
+        this.orderingKey = orderingKey;
+        this.maxQueueSize = Math.max(1, maxQueueSize);
+        this.lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    void start(ExecutorService executor) {
+        if (orderingKey == null) {
+            lanes[0].running = true;
+            executor.execute(lanes[0]);
+            return;
+        }
+        if ("subject".equals(orderingKey)) {
+            subjectToken = Integer.MAX_VALUE;
+        } else if (orderingKey.startsWith("subjectToken:")) {
+            subjectToken = Integer.parseInt(orderingKey.substring("subjectToken:".length()));
+        } else if (orderingKey.startsWith("header:")) {
+            header = orderingKey.substring("header:".length());
+        } else {
+            expression = consumer.getEndpoint().getCamelContext().resolveLanguage("simple").createExpression(orderingKey);
+        }
+
+        for (Lane lane : lanes) {
+            lane.running = true;
+            executor.execute(lane);
+        }
+    }
+
+    /**
+     * Lets the lanes finish what they have been given, the caller then waits for the executor.
+     */
+    void stop() {
+        for (Lane lane : lanes) {
+            lane.running = false;
+            LockSupport.unpark(lane.thread);
+        }
+    }
+
+    void dispatch(Exchange exchange) {
+        if (lanes.length == 1) {
+            lanes[0].offer(exchange);
+            return;
+        }
+        Object key = keyOf(exchange);
+        int hash = key == null ? 0 : key.hashCode();
+        // Spread the hash bits, hash codes of similar keys often differ in the high bits only
+        hash ^= hash >>> 16;
+        lanes[(hash & Integer.MAX_VALUE) % lanes.length].offer(exchange);
+    }
+
+    private Object keyOf(Exchange exchange) {
+        if (subjectToken >= 0) {
+            String subject;
+            if (exchange.getIn() instanceof NatsMessage) {
+                subject = ((NatsMessage) exchange.getIn()).getSubject();
+            } else {
+                Message message = exchange.getIn().getBody(Message.class);
+                subject = message == null ? null : message.getSubject();
+            }
+            return subjectToken == Integer.MAX_VALUE ? subject : token(subject, subjectToken);
+        }
+        if (header != null) {
+            return exchange.getIn().getHeader(header);
+        }
+        return expression.evaluate(exchange, Object.class);
+    }
+
+    static String token(String subject, int index) {
+        if (subject == null) {
+            return null;
+        }
+        int start = 0;
+        for (int i = 0; i < index; i++) {
+            start = subject.indexOf('.', start) + 1;
+            if (start == 0) {
+                return null;
+            }
+        }
+        int end = subject.indexOf('.', start);
+        return end < 0 ? subject.substring(start) : subject.substring(start, end);
+    }
+
+    /**
+     * A lock-free queue drained by a single thread, which parks when there is nothing to do.
+     */
+    private final class Lane implements Runnable {
+
+        private final ConcurrentLinkedQueue<Exchange> queue = new ConcurrentLinkedQueue<Exchange>();
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile Thread thread;
+        private volatile boolean running;
+
+        void offer(Exchange exchange) {
+            // Rather wait than reorder or drop: the subscription thread slows down
+            while (size.get() >= maxQueueSize && running) {
+                LockSupport.parkNanos(100000);
+            }
+            queue.offer(exchange);
+            size.incrementAndGet();
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (running || !queue.isEmpty()) {
+                Exchange exchange = queue.poll();
+                if (exchange == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                size.decrementAndGet();
+                consumer.process(exchange);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import io.nats.client.Message;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.InvalidPayloadException;
+import org.apache.camel.StreamCache;
+import org.apache.camel.util.IOHelper;
+
+/**
+ * Turns message bodies into NATS payloads with as few copies as possible.
+ */
+final class NatsPayloads {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    // Larger buffers are not kept around once the stream has been read
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INITIAL_BUFFER_SIZE];
+        }
+    };
+
+    private NatsPayloads() {
+    }
+
+    /**
+     * byte[] bodies are used as is, ByteBuffer bodies without copy whenever they wrap a whole
+     * array, InputStream bodies are read into a per thread buffer and received NATS messages
+     * give their payload. Anything else is converted
+     * to a String and encoded with the given charset, or the exchange charset if null.
+     */
+    static byte[] toBytes(Exchange exchange, Object body, Charset charset) throws Exception {
+        if (body == null) {
+            throw new InvalidPayloadException(exchange, byte[].class);
+        }
+        if (body instanceof byte[]) {
+            return (byte[]) body;
+        }
+        if (body instanceof ByteBuffer) {
+            return toBytes((ByteBuffer) body);
+        }
+        if (body instanceof Message) {
+            byte[] data = ((Message) body).getData();
+            return data != null ? data : new byte[0];
+        }
+        if (body instanceof InputStream) {
+            byte[] bytes = toBytes((InputStream) body);
+            if (body instanceof StreamCache) {
+                ((StreamCache) body).reset();
+            }
+            return bytes;
+        }
+
+        String text = body instanceof String
+            ? (String) body : exchange.getContext().getTypeConverter().mandatoryConvertTo(String.class, exchange, body);
+        return text.getBytes(charset != null ? charset : Charset.forName(IOHelper.getCharsetName(exchange)));
+    }
+
+    /**
+     * The payload given by the codec, which writes into the calling thread's buffer, or by
+     * {@link #toBytes(Exchange, Object, Charset)} when there is no codec.
+     */
+    static byte[] toBytes(Exchange exchange, Object body, Charset charset, NatsCodec codec) throws Exception {
+        if (codec == null) {
+            return toBytes(exchange, body, charset);
+        }
+        NatsCodecBuffer buffer = NatsCodecBuffer.acquire();
+        try {
+            return codec.encode(exchange, body, buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+            && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    static byte[] toBytes(InputStream stream) throws Exception {
+        byte[] buffer = BUFFERS.get();
+        int length = 0;
+        int read;
+        while ((read = stream.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            BUFFERS.set(buffer);
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+}
@@ -18,26 +18,64 @@ package org.apache.camel.component.nats;
 
 
 import io.nats.connector.CamelNatsAdapter;
+import io.nats.connector.NatsFlushListener;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.CountDownLatch;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
-import org.apache.camel.impl.DefaultProducer;
+import org.apache.camel.Message;
+import org.apache.camel.StreamCache;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
+import org.apache.camel.impl.DefaultAsyncProducer;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.LRUCache;
 import org.apache.camel.util.ObjectHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class NatsProducer extends DefaultProducer{
+@ManagedResource(description = "Managed NATS Producer")
+public class NatsProducer extends DefaultAsyncProducer{
     
     private static final Logger logger = LoggerFactory.getLogger(NatsProducer.class);
-    private CountDownLatch 		startupLatch = null;
-    private CountDownLatch 		shutdownLatch = null;
+    private static final long DEFAULT_MAX_PAYLOAD = 1024 * 1024;
     
-    private CamelNatsAdapter 	natsAdapter = null;
-	private ExecutorService 	executor = null;
+    private CamelNatsAdapter 	natsAdapters[] = null;
+    private int 				poolSize;
+    private final AtomicInteger nextAdapter = new AtomicInteger();
+	private ScheduledExecutorService flushExecutor = null;
+	private ExecutorService completionExecutor = null;
+	private Charset 			charset = null;
+	private NatsLogSampler 		logSampler = new NatsLogSampler(1);
+	private AtomicReferenceArray<NatsReplyManager> replyManagers = null;
+	private ScheduledExecutorService requestTimer = null;
+	private Map<String, Boolean> validSubjects = null;
+	private final NatsMetrics 	metrics = new NatsMetrics();
+	private NatsLocalDispatcher localDispatcher = null;
+	private String 				servers = null;
+	private NatsCompression 	compression = NatsCompression.NONE;
+	private int 				compressionThreshold;
+	private NatsCodec 			codec = null;
+	private boolean 			chunked;
+	private int 				chunkSize;
+	private final AtomicLong 	nextTransferId = new AtomicLong(new Random().nextLong());
     
     public NatsProducer(NatsEndpoint endpoint) {
         super(endpoint);   
@@ -49,51 +87,425 @@ public class NatsProducer extends DefaultProducer{
     }
     
     @Override 
-    public void process(Exchange exchange) throws Exception {
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+        final long start = System.nanoTime();
         NatsConfiguration config = getEndpoint().getNatsConfiguration();
-        String body = exchange.getIn().getMandatoryBody(String.class);
+        int index = selectAdapter();
+        CamelNatsAdapter natsAdapter = natsAdapters[index];
+        try {
+            int count;
+            Message in = exchange.getIn();
+            String subject = subjectOf(in, NatsConstants.NATS_SUBJECT, config.getTopic());
+            Iterable<?> batch = getBatch(exchange);
+            if (batch == null && config.isRequestReply() && exchange.getPattern().isOutCapable()) {
+                return request(index, exchange, callback, subject);
+            }
+            String replySubject = subjectOf(in, NatsConstants.NATS_REPLY_SUBJECT,
+                    ObjectHelper.isNotEmpty(config.getReplySubject()) ? config.getReplySubject() : null);
+            if (batch == null) {
+                count = writeBody(natsAdapter, exchange, in.getBody(), subject, replySubject);
+            } else {
+                count = writeBatch(natsAdapter, exchange, batch, subject, replySubject);
+            }
+            if (count == 0) {
+                // An empty batch, nothing to flush
+                callback.done(true);
+                return true;
+            }
 
-        logger.info("Publishing to topic: {}", config.getTopic());
-        
-       
-        String replySubject = config.getReplySubject();
-           
-        if (ObjectHelper.isNotEmpty(config.getReplySubject())) {
-            publish(config.getTopic(), replySubject, body.getBytes());
-        } else {
-        	publish(config.getTopic(), null, body.getBytes());
+            NatsFlushPolicy flushPolicy = natsAdapter.getFlushPolicy();
+            if (flushPolicy == NatsFlushPolicy.ALWAYS || flushPolicy == NatsFlushPolicy.NEVER) {
+                // Nothing to wait for, the flush (if any) is already done when it returns
+                natsAdapter.flushWritten(count, null);
+                metrics.getPublishLatency().record(System.nanoTime() - start);
+                callback.done(true);
+                return true;
+            }
+
+            final ExecutorService completions = completionExecutor;
+            natsAdapter.flushWritten(count, new NatsFlushListener() {
+                @Override
+                public void onFlush(final Exception cause) {
+                    metrics.getPublishLatency().record(System.nanoTime() - start);
+                    Runnable completion = new Runnable() {
+                        @Override
+                        public void run() {
+                            if (cause != null) {
+                                exchange.setException(cause);
+                            }
+                            callback.done(false);
+                        }
+                    };
+                    // The route goes on elsewhere, the flusher thread being shared by the connections
+                    try {
+                        completions.execute(completion);
+                    } catch (RejectedExecutionException e) {
+                        completion.run();
+                    }
+                }
+            });
+            return false;
+        } catch (Exception e) {
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+    }
+
+    /**
+     * Publishes the exchange with a reply subject of the connection's inbox, the exchange
+     * being completed by the reply (or the timeout) on another thread. The request is not
+     * explicitly flushed, its reply confirming it.
+     */
+    private boolean request(int index, Exchange exchange, AsyncCallback callback, String subject) throws Exception {
+        NatsReplyManager replyManager = getReplyManager(index);
+        String replySubject = replyManager.register(exchange, callback);
+        try {
+            writeBody(natsAdapters[index], exchange, exchange.getIn().getBody(), subject, replySubject);
+        } catch (Exception e) {
+            replyManager.cancel(replySubject);
+            throw e;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the body without flushing it, returning the number of messages written: several
+     * chunks when chunked is set and the body is a stream, a file or larger than a chunk.
+     */
+    private int writeBody(CamelNatsAdapter natsAdapter, Exchange exchange, Object body, String subject, String replySubject) throws Exception {
+        if (chunked && NatsChunks.isStreamed(body)) {
+            return writeChunks(natsAdapter, exchange, body, subject, replySubject);
         }
+        byte[] payload = NatsPayloads.toBytes(exchange, body, charset, codec);
+        if (chunked && payload.length > chunkSize(natsAdapter)) {
+            return writeChunks(natsAdapter, exchange, new ByteArrayInputStream(payload), subject, replySubject);
+        }
+
+        payload = compress(payload);
+        if (logger.isTraceEnabled() && logSampler.sample()) {
+            logger.trace("Publishing {} bytes to subject: {}", payload.length, subject);
+        }
+        metrics.onPublished(1, write(natsAdapter, subject, replySubject, payload));
+        return 1;
+    }
+
+    /**
+     * Writes the payload to the connection, then hands it to the local consumers when
+     * localDelivery is set, returning the number of bytes written. A payload which could not
+     * be written is not delivered locally, nor is one which would no longer fit in the
+     * max_payload of the server once tagged: it is published as is, the local consumers
+     * getting it from the server.
+     */
+    private int write(CamelNatsAdapter natsAdapter, String subject, String replySubject, byte[] payload) throws Exception {
+        NatsLocalDispatcher.Delivery local = localDispatcher != null
+            && payload.length <= maxPayload(natsAdapter) - NatsLocalTag.HEADER_SIZE ? localDispatcher.prepare(servers, subject) : null;
+        if (local == null) {
+            natsAdapter.write(subject, replySubject, payload);
+            return payload.length;
+        }
+
+        byte[] tagged = local.tag(payload);
+        try {
+            natsAdapter.write(subject, replySubject, tagged);
+        } catch (Exception e) {
+            local.cancel();
+            throw e;
+        }
+        local.deliver(replySubject, payload);
+        return tagged.length;
+    }
+
+    /**
+     * Writes the body chunk by chunk as it is read, so that only one chunk is in memory.
+     * Files are opened (and closed) here, streams are left open.
+     */
+    private int writeChunks(CamelNatsAdapter natsAdapter, Exchange exchange, Object body, String subject, String replySubject) throws Exception {
+        InputStream stream = body instanceof InputStream
+            ? (InputStream) body : exchange.getContext().getTypeConverter().mandatoryConvertTo(InputStream.class, exchange, body);
+        int size = chunkSize(natsAdapter);
+        long transferId = nextTransferId.getAndIncrement();
+        byte[] chunk = new byte[NatsChunks.HEADER_SIZE + size];
+        int sequence = 0;
+        long bytes = 0;
+        try {
+            boolean last;
+            do {
+                int length = NatsChunks.read(stream, chunk, NatsChunks.HEADER_SIZE, size);
+                last = length < size;
+                NatsChunks.writeHeader(chunk, transferId, sequence++, last);
+                // The connection copies what it is given, local consumers keep it
+                byte[] payload = last || localDispatcher != null
+                    ? Arrays.copyOf(chunk, NatsChunks.HEADER_SIZE + length) : chunk;
+                bytes += write(natsAdapter, subject, replySubject, payload);
+            } while (!last);
+        } finally {
+            if (stream != body) {
+                IOHelper.close(stream);
+            } else if (body instanceof StreamCache) {
+                ((StreamCache) body).reset();
+            }
+        }
+
+        if (logger.isTraceEnabled() && logSampler.sample()) {
+            logger.trace("Published {} bytes in {} chunks to subject: {}", bytes, sequence, subject);
+        }
+        metrics.onPublished(sequence, bytes);
+        return sequence;
+    }
+
+    /**
+     * The chunkSize, within the max_payload of the server once the chunk header and the
+     * localDelivery tag, if any, are added
+     */
+    private int chunkSize(CamelNatsAdapter natsAdapter) {
+        int max = maxPayload(natsAdapter) - NatsChunks.HEADER_SIZE;
+        if (localDispatcher != null) {
+            max -= NatsLocalTag.HEADER_SIZE;
+        }
+        return chunkSize > 0 ? Math.min(chunkSize, max) : max;
+    }
+
+    private static int maxPayload(CamelNatsAdapter natsAdapter) {
+        long maxPayload = natsAdapter.getMaxPayload();
+        return (int) Math.min(Integer.MAX_VALUE, maxPayload > 0 ? maxPayload : DEFAULT_MAX_PAYLOAD);
+    }
+
+    /**
+     * The reply manager of a connection, subscribing to its inbox on the first request.
+     */
+    private NatsReplyManager getReplyManager(int index) throws Exception {
+        NatsReplyManager replyManager = replyManagers.get(index);
+        if (replyManager != null) {
+            return replyManager;
+        }
+        synchronized (this) {
+            replyManager = replyManagers.get(index);
+            if (replyManager == null) {
+                if (requestTimer == null) {
+                    requestTimer = getEndpoint().createRequestTimer();
+                }
+                replyManager = new NatsReplyManager(getEndpoint().getNatsConfiguration().getRequestTimeout(), requestTimer, codec);
+                replyManager.start(natsAdapters[index]);
+                replyManagers.set(index, replyManager);
+            }
+            return replyManager;
+        }
+    }
+
+    /**
+     * The subject given by the header of the message, checked once per distinct subject,
+     * or the default subject when there is no such header.
+     */
+    private String subjectOf(Message message, String header, String defaultSubject) {
+        String subject = message.getHeader(header, String.class);
+        if (subject == null) {
+            return defaultSubject;
+        }
+        if (validSubjects.get(subject) == null) {
+            NatsSubjects.validate(subject);
+            validSubjects.put(subject, Boolean.TRUE);
+        }
+        return subject;
+    }
+
+    /**
+     * The messages to publish back to back when the exchange carries several of them: an
+     * aggregated exchange (grouped exchanges), or a body which is a Collection or an array.
+     * Other Iterable bodies (a Path for one) are single messages.
+     */
+    private Iterable<?> getBatch(Exchange exchange) {
+        List<?> grouped = exchange.getProperty(Exchange.GROUPED_EXCHANGE, List.class);
+        if (grouped != null) {
+            return grouped;
+        }
+        Object body = exchange.getIn().getBody();
+        if (body instanceof Collection) {
+            return (Collection<?>) body;
+        }
+        if (body instanceof Object[]) {
+            return Arrays.asList((Object[]) body);
+        }
+        return null;
+    }
+
+    /**
+     * Writes every element of the batch without flushing. Elements being exchanges or messages
+     * may override the subject with the {@link NatsConstants#NATS_SUBJECT} header.
+     */
+    private int writeBatch(CamelNatsAdapter natsAdapter, Exchange exchange, Iterable<?> batch, String topic, String replySubject) throws Exception {
+        List<String> subjects = new ArrayList<String>();
+        List<byte[]> payloads = new ArrayList<byte[]>();
+
+        // Convert the whole batch first so that a bad element publishes nothing
+        for (Object element : batch) {
+            if (element instanceof Exchange) {
+                element = ((Exchange) element).getIn();
+            }
+            if (element instanceof Message) {
+                Message message = (Message) element;
+                subjects.add(subjectOf(message, NatsConstants.NATS_SUBJECT, topic));
+                payloads.add(compress(NatsPayloads.toBytes(exchange, message.getBody(), charset, codec)));
+            } else {
+                subjects.add(topic);
+                payloads.add(compress(NatsPayloads.toBytes(exchange, element, charset, codec)));
+            }
+        }
+
+        if (logger.isTraceEnabled() && logSampler.sample()) {
+            logger.trace("Publishing {} messages to topic: {}", payloads.size(), topic);
+        }
+        long bytes = 0;
+        for (int i = 0; i < payloads.size(); i++) {
+            bytes += write(natsAdapter, subjects.get(i), replySubject, payloads.get(i));
+        }
+        metrics.onPublished(payloads.size(), bytes);
+        return payloads.size();
     }
     
+    /**
+     * The payload compressed as configured, local consumers getting it compressed too
+     */
+    private byte[] compress(byte[] payload) {
+        if (compression == NatsCompression.NONE) {
+            return payload;
+        }
+        return NatsCompressor.compress(compression, payload, compressionThreshold);
+    }
+
     public void publish(String subject, String replySubject, byte[] payload) throws Exception{		
-    	natsAdapter.publish(subject, replySubject, payload);
+    	CamelNatsAdapter natsAdapter = natsAdapters[selectAdapter()];
+    	int bytes = write(natsAdapter, subject, replySubject, payload);
+    	natsAdapter.flushWritten(1, null);
+    	metrics.onPublished(1, bytes);
 	}
+
+    public NatsMetrics getMetrics() {
+        return metrics;
+    }
+
+    @ManagedAttribute(description = "Messages published")
+    public long getMessagesOut() {
+        return metrics.getMessagesOut();
+    }
+
+    @ManagedAttribute(description = "Bytes published")
+    public long getBytesOut() {
+        return metrics.getBytesOut();
+    }
+
+    @ManagedAttribute(description = "Mean time to publish an exchange in microseconds")
+    public double getPublishLatencyMean() {
+        return metrics.getPublishLatency().getMeanMicros();
+    }
+
+    @ManagedAttribute(description = "Median time to publish an exchange in microseconds (upper bound)")
+    public long getPublishLatencyP50() {
+        return metrics.getPublishLatency().getPercentileMicros(0.5);
+    }
+
+    @ManagedAttribute(description = "99th percentile of the time to publish an exchange in microseconds (upper bound)")
+    public long getPublishLatencyP99() {
+        return metrics.getPublishLatency().getPercentileMicros(0.99);
+    }
+
+    @ManagedAttribute(description = "Longest time to publish an exchange in microseconds")
+    public double getPublishLatencyMax() {
+        return metrics.getPublishLatency().getMaxMicros();
+    }
+
+    @ManagedAttribute(description = "Flush round trips to the NATS server")
+    public long getFlushes() {
+        return metrics.getFlushLatency().getCount();
+    }
+
+    @ManagedAttribute(description = "Mean flush round trip in microseconds")
+    public double getFlushLatencyMean() {
+        return metrics.getFlushLatency().getMeanMicros();
+    }
+
+    @ManagedAttribute(description = "99th percentile of the flush round trip in microseconds (upper bound)")
+    public long getFlushLatencyP99() {
+        return metrics.getFlushLatency().getPercentileMicros(0.99);
+    }
+
+    @ManagedAttribute(description = "Longest flush round trip in microseconds")
+    public double getFlushLatencyMax() {
+        return metrics.getFlushLatency().getMaxMicros();
+    }
+
+    @ManagedAttribute(description = "Reconnections to the NATS server")
+    public long getReconnects() {
+        return metrics.getReconnects();
+    }
+
+    @ManagedAttribute(description = "Disconnections from the NATS server")
+    public long getDisconnects() {
+        return metrics.getDisconnects();
+    }
+
+    @ManagedOperation(description = "Reset the counters and latencies")
+    public void resetStatistics() {
+        metrics.reset();
+    }
+
+    /**
+     * Picks the connection of the pool to publish with, without any locking.
+     */
+    private int selectAdapter() {
+        if (poolSize == 1) {
+            return 0;
+        }
+        int index;
+        if (getEndpoint().getNatsConfiguration().getStriping() == NatsStriping.ROUND_ROBIN) {
+            index = (nextAdapter.getAndIncrement() & Integer.MAX_VALUE) % poolSize;
+        } else {
+            index = (int) (Thread.currentThread().getId() % poolSize);
+        }
+        return index;
+    }
     
     @Override 
     protected void doStart() throws Exception {
         super.doStart();
         logger.debug("Starting Nats Producer");    
-        startupLatch = new CountDownLatch(1);  
+        String charsetName = getEndpoint().getNatsConfiguration().getCharset();
+        charset = ObjectHelper.isNotEmpty(charsetName) ? Charset.forName(charsetName) : null;
+        poolSize = Math.max(1, getEndpoint().getNatsConfiguration().getPoolSize());
+        logSampler = new NatsLogSampler(getEndpoint().getNatsConfiguration().getLogSampleRate());
+        validSubjects = new LRUCache<String, Boolean>(getEndpoint().getNatsConfiguration().getSubjectCacheSize());
+        localDispatcher = getEndpoint().getLocalDispatcher();
+        if (localDispatcher != null && !getEndpoint().getNatsConfiguration().isLocalDeliveryTag()) {
+            // The published payloads would change behind the back of their other subscribers
+            throw new IllegalArgumentException("localDelivery on a NATS producer requires localDeliveryTag, "
+                + "which puts a header in front of the published payloads");
+        }
+        servers = getEndpoint().getNatsConfiguration().getServers();
+        compression = getEndpoint().getNatsConfiguration().getCompression();
+        compressionThreshold = getEndpoint().getNatsConfiguration().getCompressionThreshold();
+        codec = getEndpoint().getNatsConfiguration().getCodec();
+        chunked = getEndpoint().getNatsConfiguration().isChunked();
+        chunkSize = getEndpoint().getNatsConfiguration().getChunkSize();
         
         Properties natsProperties = getEndpoint().getNatsConfiguration().createProperties();
-        natsAdapter = new CamelNatsAdapter(this, natsProperties, logger);            
-        executor = getEndpoint().createProducerExecutor();
-        executor.submit((Runnable)natsAdapter.getConnector());      
-       
-        // Wait for connector to fully initialize
-        boolean initialized = true;
-        try{
-        	//initialized = startupLatch.await(10, TimeUnit.SECONDS);
-        	startupLatch.await();
-        }
-        catch(InterruptedException e){
-        	logger.error("Nats Producer initilization was interrupted"); 
-        	throw new Exception("Startup failure in NATS Connector");
+        NatsFlushPolicy flushPolicy = getEndpoint().getNatsConfiguration().getFlushPolicy();
+        if (flushPolicy == NatsFlushPolicy.COUNT || flushPolicy == NatsFlushPolicy.INTERVAL) {
+            flushExecutor = getEndpoint().createFlushExecutor();
+            completionExecutor = getEndpoint().createCompletionExecutor();
         }
-        
-        if (initialized == false){
-        	logger.info("Nats Producer initilization is taking longer then expected"); 
-        	throw new Exception("Startup failure in NATS Connector");
+        natsAdapters = new CamelNatsAdapter[poolSize];
+        replyManagers = new AtomicReferenceArray<NatsReplyManager>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                natsAdapters[i] = new CamelNatsAdapter(this, natsProperties, logger);            
+                natsAdapters[i].setConnectionRegistry(getEndpoint().getConnectionRegistry(), i);
+                natsAdapters[i].startFlusher(flushExecutor);
+                natsAdapters[i].start();
+            }
+        } catch (Exception e) {
+            logger.error("Nats Producer initilization failed"); 
+            doStop();
+            throw new Exception("Startup failure in NATS Connector", e);
         }
         
         logger.info("Started NATS Producer");
@@ -102,52 +514,45 @@ public class NatsProducer extends DefaultProducer{
     @Override  
     protected void doStop() throws Exception {
        
-    	 logger.info("Stopping Nats Producer");
-    	 super.doStop();
+    	logger.info("Stopping Nats Producer");
+    	super.doStop();
         
-        shutdownLatch = new CountDownLatch(1);
-        //connector.shutdown(); 
-        natsAdapter.shutdown();
-        boolean shutdown = false;
-        try{
-        	shutdown = shutdownLatch.await(10, TimeUnit.SECONDS);
-        	//shutdownLatch.await();
-        }
-        catch(InterruptedException e){
-        	logger.error("Nats Producer shutdown was interrupted"); 
+        if (replyManagers != null) {
+            for (int i = 0; i < replyManagers.length(); i++) {
+                if (replyManagers.get(i) != null) {
+                    replyManagers.get(i).failPending(new IllegalStateException("NATS producer stopped before the reply"));
+                }
+            }
         }
-        
-        if (shutdown == false){
-        	logger.error("Nats Producer shutdown timed out"); 
+        replyManagers = null;
+
+        if (natsAdapters != null) {
+            for (int i = 0; i < natsAdapters.length; i++) {
+                if (natsAdapters[i] != null) {
+                    natsAdapters[i].shutdown();
+                }
+            }
         }
-        
-        if (executor != null) {
+        natsAdapters = null;
+         
+        if (flushExecutor != null) {
             if (getEndpoint() != null && getEndpoint().getCamelContext() != null) {
-                getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(executor);
+                getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(flushExecutor);
             } else {
-                executor.shutdown();
+                flushExecutor.shutdownNow();
             }
-         }
-         executor = null;           
-    }
-
-    public CountDownLatch getStartupLatch() {
-		return startupLatch;
-	}
-
-	public void setStartupLatch(CountDownLatch startupLatch) {
-		this.startupLatch = startupLatch;
-	}
-
-	public CountDownLatch getShutdownLatch() {
-		return shutdownLatch;
-	}
-
-	public void setShutdownLatch(CountDownLatch shutdownLatch) {
-		this.shutdownLatch = shutdownLatch;
-	}
-  
+        }
+        flushExecutor = null;
 
-	
+        // After the adapters, whose last flush may still complete exchanges
+        if (completionExecutor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownGraceful(completionExecutor);
+        }
+        completionExecutor = null;
 
+        if (requestTimer != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(requestTimer);
+        }
+        requestTimer = null;
+    }
 }
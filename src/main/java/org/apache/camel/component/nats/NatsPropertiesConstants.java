@@ -25,6 +25,7 @@ public interface NatsPropertiesConstants {
     String NATS_PROPERTY_MAX_RECONNECT_ATTEMPTS = "io.nats.client.reconnect.max";
     String NATS_PROPERTY_RECONNECT_TIME_WAIT = "io.nats.client.reconnect.wait";
     String NATS_PROPERTY_PING_INTERVAL = "io.nats.client.pinginterval";
+    String NATS_PROPERTY_CONNECTION_TIMEOUT = "io.nats.client.timeout";
     String NATS_PROPERTY_DONT_RANDOMIZE_SERVERS = "io.nats.client.norandomize";
     String NATS_PROPERTY_QUEUE = "queue";
     String NATS_PROPERTY_MAX_MESSAGES = "max";
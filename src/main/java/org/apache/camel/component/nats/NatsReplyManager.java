@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.nats.client.Message;
+import io.nats.client.MessageHandler;
+import io.nats.connector.CamelNatsAdapter;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangeTimedOutException;
+
+/**
+ * Correlates the replies of the requests sent through one connection.
+ *
+ * A single subscription to "inbox.*" receives every reply, each request being sent with
+ * its own "inbox.token" reply subject. The pending exchange of a token is completed by its
+ * reply, or failed when requestTimeout elapses first.
+ */
+class NatsReplyManager implements MessageHandler {
+
+    private volatile String inbox;
+    private final long requestTimeout;
+    private final ScheduledExecutorService timer;
+    private final NatsCodec codec;
+    private final AtomicLong nextToken = new AtomicLong();
+    private final Map<String, PendingRequest> pending = new ConcurrentHashMap<String, PendingRequest>();
+
+    NatsReplyManager(long requestTimeout, ScheduledExecutorService timer, NatsCodec codec) {
+        this.requestTimeout = requestTimeout;
+        this.codec = codec;
+        this.timer = timer;
+    }
+
+    /**
+     * Subscribes to the replies through the given connection.
+     */
+    void start(CamelNatsAdapter adapter) throws Exception {
+        inbox = adapter.subscribeReplies(this);
+    }
+
+    /**
+     * Registers the exchange as waiting for a reply, returning the subject to reply to.
+     */
+    String register(Exchange exchange, AsyncCallback callback) {
+        final String token = Long.toString(nextToken.incrementAndGet(), 36);
+        final PendingRequest request = new PendingRequest(exchange, callback);
+        pending.put(token, request);
+        if (requestTimeout > 0) {
+            request.timeoutTask = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (pending.remove(token, request)) {
+                        request.exchange.setException(new ExchangeTimedOutException(request.exchange, requestTimeout));
+                        request.callback.done(false);
+                    }
+                }
+            }, requestTimeout, TimeUnit.MILLISECONDS);
+        }
+        return inbox + "." + token;
+    }
+
+    /**
+     * Forgets a request which could not be sent.
+     */
+    void cancel(String replySubject) {
+        PendingRequest request = pending.remove(replySubject.substring(inbox.length() + 1));
+        if (request != null && request.timeoutTask != null) {
+            request.timeoutTask.cancel(false);
+        }
+    }
+
+    @Override
+    public void onMessage(Message reply) {
+        String subject = reply.getSubject();
+        PendingRequest request = pending.remove(subject.substring(subject.lastIndexOf('.') + 1));
+        if (request == null) {
+            // Timed out already, or a second reply
+            return;
+        }
+        if (request.timeoutTask != null) {
+            request.timeoutTask.cancel(false);
+        }
+        request.exchange.setOut(new NatsMessage(reply, System.currentTimeMillis(), null, false, codec));
+        request.callback.done(false);
+    }
+
+    /**
+     * Fails the requests still waiting for their reply, when the producer stops.
+     */
+    void failPending(Exception cause) {
+        for (Map.Entry<String, PendingRequest> entry : pending.entrySet()) {
+            PendingRequest request = entry.getValue();
+            if (!pending.remove(entry.getKey(), request)) {
+                continue;
+            }
+            if (request.timeoutTask != null) {
+                request.timeoutTask.cancel(false);
+            }
+            request.exchange.setException(cause);
+            request.callback.done(false);
+        }
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private static final class PendingRequest {
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        PendingRequest(Exchange exchange, AsyncCallback callback) {
+            this.exchange = exchange;
+            this.callback = callback;
+        }
+    }
+}
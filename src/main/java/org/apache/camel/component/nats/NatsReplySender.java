@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.nio.charset.Charset;
+
+import io.nats.connector.CamelNatsAdapter;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the result of a consumed request to its reply subject, through the connection
+ * which received it, once the route is done with the exchange.
+ *
+ * The reply is only written: the client's own flusher thread sends the replies written
+ * meanwhile in one go, without a PING/PONG round trip per reply.
+ */
+class NatsReplySender extends SynchronizationAdapter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NatsReplySender.class);
+    private static final byte[] EMPTY = new byte[0];
+
+    private final CamelNatsAdapter adapter;
+    private final String replyTo;
+    private final Charset charset;
+    private final NatsCodec codec;
+
+    NatsReplySender(CamelNatsAdapter adapter, String replyTo, Charset charset, NatsCodec codec) {
+        this.adapter = adapter;
+        this.replyTo = replyTo;
+        this.charset = charset;
+        this.codec = codec;
+    }
+
+    @Override
+    public void onComplete(Exchange exchange) {
+        Message result = exchange.hasOut() ? exchange.getOut() : exchange.getIn();
+        try {
+            Object body = result.getBody();
+            adapter.write(replyTo, null, body == null ? EMPTY : NatsPayloads.toBytes(exchange, body, charset, codec));
+        } catch (Exception e) {
+            LOG.warn("Unable to reply to {}: {}", replyTo, e.getMessage());
+            LOG.debug("Exception: ", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+/**
+ * Subject related checks, done before publishing to subjects coming from the exchanges, and
+ * matching of subjects against subscriptions for the local delivery.
+ */
+final class NatsSubjects {
+
+    private NatsSubjects() {
+    }
+
+    /**
+     * Checks that messages can be published to the subject: dot separated non-empty tokens,
+     * without whitespace nor wildcards.
+     */
+    static void validate(String subject) {
+        if (subject.isEmpty()) {
+            throw new IllegalArgumentException("Empty NATS subject");
+        }
+        int tokenStart = 0;
+        for (int i = 0; i <= subject.length(); i++) {
+            char c = i < subject.length() ? subject.charAt(i) : '.';
+            if (c == '.') {
+                if (i == tokenStart) {
+                    throw new IllegalArgumentException("Empty token in NATS subject: " + subject);
+                }
+                if (i - tokenStart == 1 && (subject.charAt(tokenStart) == '*' || subject.charAt(tokenStart) == '>')) {
+                    throw new IllegalArgumentException("Cannot publish to the wildcard NATS subject: " + subject);
+                }
+                tokenStart = i + 1;
+            } else if (Character.isWhitespace(c)) {
+                throw new IllegalArgumentException("Whitespace in NATS subject: " + subject);
+            }
+        }
+    }
+
+    /**
+     * Whether the tokens of a subject match the ones of a subscription, which may contain the
+     * * (one token) and > (one or more trailing tokens) wildcards.
+     */
+    static boolean matches(String[] subscription, String[] subject) {
+        for (int i = 0; i < subscription.length; i++) {
+            if (subscription[i].equals(">")) {
+                return subject.length > i;
+            }
+            if (i >= subject.length || !(subscription[i].equals("*") || subscription[i].equals(subject[i]))) {
+                return false;
+            }
+        }
+        return subscription.length == subject.length;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsAsyncProducerTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testAsyncSendCompletesOnFlush() throws Exception {
+        mockResultEndpoint.expectedMessageCount(7);
+
+        // 7 messages with a batch of 5: the last two are completed by the interval flush
+        List<Future<Exchange>> replies = new ArrayList<Future<Exchange>>();
+        for (int i = 0; i < 7; i++) {
+            replies.add(template.asyncSend("direct:send", createExchangeWithBody("async" + i)));
+        }
+
+        for (Future<Exchange> reply : replies) {
+            Exchange exchange = reply.get(5, TimeUnit.SECONDS);
+            assertNull(exchange.getException());
+        }
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=async&flushPolicy=count&flushBatchSize=5&flushInterval=100000");
+                from("nats://" + getNatsServers() + "?topic=async").to(mockResultEndpoint);
+            }
+        };
+    }
+}
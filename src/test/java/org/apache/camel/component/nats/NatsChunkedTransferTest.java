@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.StreamCache;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.spi.ExceptionHandler;
+import org.apache.camel.util.IOHelper;
+import org.junit.Test;
+
+public class NatsChunkedTransferTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:memory")
+    protected MockEndpoint mockMemoryEndpoint;
+
+    @EndpointInject(uri = "mock:spooled")
+    protected MockEndpoint mockSpooledEndpoint;
+
+    @EndpointInject(uri = "mock:limited")
+    protected MockEndpoint mockLimitedEndpoint;
+
+    @EndpointInject(uri = "mock:partial")
+    protected MockEndpoint mockPartialEndpoint;
+
+    private final CopyOnWriteArrayList<Boolean> inMemory = new CopyOnWriteArrayList<Boolean>();
+
+    @Test
+    public void testPayloadLargerThanMaxPayload() throws Exception {
+        // Over the 1 MB max_payload of the server
+        byte[] payload = payload(3 * 1024 * 1024 + 17);
+        mockMemoryEndpoint.expectedMessageCount(1);
+
+        template.sendBody("direct:memory", payload);
+
+        mockMemoryEndpoint.assertIsSatisfied();
+        byte[] received = mockMemoryEndpoint.getReceivedExchanges().get(0).getIn().getBody(byte[].class);
+        assertTrue(Arrays.equals(payload, received));
+        assertEquals(Arrays.asList(Boolean.TRUE), inMemory);
+    }
+
+    @Test
+    public void testStreamSpooledToFile() throws Exception {
+        int spooled = spooledFiles();
+        // A multiple of the chunk size, ending with an empty chunk
+        byte[] payload = payload(40 * 64 * 1024);
+        mockSpooledEndpoint.expectedMessageCount(2);
+
+        template.sendBody("direct:spooled", new ByteArrayInputStream(payload));
+        template.sendBody("direct:spooled", new ByteArrayInputStream("small".getBytes("UTF-8")));
+
+        mockSpooledEndpoint.assertIsSatisfied();
+        assertTrue(Arrays.equals(payload, mockSpooledEndpoint.getReceivedExchanges().get(0).getIn().getBody(byte[].class)));
+        assertEquals("small", mockSpooledEndpoint.getReceivedExchanges().get(1).getIn().getBody(String.class));
+        assertEquals(Arrays.asList(Boolean.FALSE, Boolean.TRUE), inMemory);
+        // Deleted once the exchange is done
+        assertEquals(spooled, spooledFiles());
+    }
+
+    @Test
+    public void testSpooledBeyondMemoryLimit() throws Exception {
+        byte[] payload = payload(300 * 1024);
+        mockLimitedEndpoint.expectedMessageCount(2);
+
+        // Under chunkSpoolThreshold, but not under chunkMemoryLimit
+        template.sendBody("direct:limited", new ByteArrayInputStream(payload));
+        template.sendBody("direct:limited", new ByteArrayInputStream("small".getBytes("UTF-8")));
+
+        mockLimitedEndpoint.assertIsSatisfied();
+        assertTrue(Arrays.equals(payload, mockLimitedEndpoint.getReceivedExchanges().get(0).getIn().getBody(byte[].class)));
+        assertEquals(Arrays.asList(Boolean.FALSE, Boolean.TRUE), inMemory);
+    }
+
+    @Test
+    public void testMarkerWithUnknownFlags() throws Exception {
+        byte[] chunk = new byte[NatsChunks.HEADER_SIZE];
+        NatsChunks.writeHeader(chunk, 42, 0, true);
+        assertTrue(NatsChunks.isChunk(chunk));
+        chunk[2] = 0x42;
+        assertFalse(NatsChunks.isChunk(chunk));
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        File file = File.createTempFile("nats-chunked", ".bin");
+        file.deleteOnExit();
+        byte[] payload = payload(200 * 1024 + 5);
+        IOHelper.copyAndCloseInput(new ByteArrayInputStream(payload), new FileOutputStream(file));
+        mockSpooledEndpoint.expectedMessageCount(1);
+
+        template.sendBody("direct:spooled", file);
+
+        mockSpooledEndpoint.assertIsSatisfied();
+        assertTrue(Arrays.equals(payload, mockSpooledEndpoint.getReceivedExchanges().get(0).getIn().getBody(byte[].class)));
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testTooLargeWithoutChunks() throws Exception {
+        try {
+            template.sendBody("direct:unchunked", payload(2 * 1024 * 1024));
+            fail("Should have failed to publish");
+        } catch (CamelExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void testIncompleteTransferTimesOut() throws Exception {
+        final CopyOnWriteArrayList<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        ((NatsConsumer) context.getRoute("partial").getConsumer()).setExceptionHandler(new ExceptionHandler() {
+            @Override
+            public void handleException(Throwable exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public void handleException(String message, Throwable exception) {
+                errors.add(exception);
+            }
+
+            @Override
+            public void handleException(String message, Exchange exchange, Throwable exception) {
+                errors.add(exception);
+            }
+        });
+
+        // First chunk of a transfer which never ends, sent by hand
+        byte[] chunk = new byte[NatsChunks.HEADER_SIZE + 10];
+        NatsChunks.writeHeader(chunk, 42, 0, false);
+        template.sendBody("direct:partial", chunk);
+
+        for (int i = 0; i < 50 && errors.isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, errors.size());
+        assertIsInstanceOf(TimeoutException.class, errors.get(0));
+        assertEquals(0, mockPartialEndpoint.getReceivedCounter());
+
+        // A chunk out of sequence is reported as missing one
+        NatsChunks.writeHeader(chunk, 43, 1, true);
+        template.sendBody("direct:partial", chunk);
+        for (int i = 0; i < 50 && errors.size() < 2; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, errors.size());
+        assertEquals(0, mockPartialEndpoint.getReceivedCounter());
+    }
+
+    private static int spooledFiles() {
+        String[] files = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("camel-nats-") && name.endsWith(".chunks");
+            }
+        });
+        return files == null ? 0 : files.length;
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    private Processor recordInMemory() {
+        return new Processor() {
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                inMemory.add(exchange.getIn().getBody(StreamCache.class).inMemory());
+            }
+        };
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:memory").to("nats://" + getNatsServers() + "?topic=chunks.memory&chunked=true");
+                from("nats://" + getNatsServers() + "?topic=chunks.memory&chunked=true&chunkSpoolThreshold=8388608")
+                    .process(recordInMemory())
+                    .convertBodyTo(byte[].class)
+                    .to(mockMemoryEndpoint);
+
+                from("direct:spooled").to("nats://" + getNatsServers() + "?topic=chunks.spooled&chunked=true&chunkSize=65536");
+                // The spooled file is gone once the exchange is done, so the body is read before
+                from("nats://" + getNatsServers() + "?topic=chunks.spooled&chunked=true&chunkSpoolThreshold=102400")
+                    .process(recordInMemory())
+                    .convertBodyTo(byte[].class)
+                    .to(mockSpooledEndpoint);
+
+                from("direct:limited").to("nats://" + getNatsServers() + "?topic=chunks.limited&chunked=true&chunkSize=65536");
+                from("nats://" + getNatsServers() + "?topic=chunks.limited&chunked=true&chunkSpoolThreshold=8388608&chunkMemoryLimit=102400")
+                    .process(recordInMemory())
+                    .convertBodyTo(byte[].class)
+                    .to(mockLimitedEndpoint);
+
+                from("direct:unchunked").to("nats://" + getNatsServers() + "?topic=chunks.unchunked");
+
+                from("direct:partial").to("nats://" + getNatsServers() + "?topic=chunks.partial");
+                from("nats://" + getNatsServers() + "?topic=chunks.partial&chunked=true&chunkTimeout=200").routeId("partial")
+                    .to(mockPartialEndpoint);
+            }
+        };
+    }
+}
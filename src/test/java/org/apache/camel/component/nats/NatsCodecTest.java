@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.JndiRegistry;
+import org.junit.Test;
+
+public class NatsCodecTest extends NatsTestSupport {
+
+    private static final String TEXT = "caf\u00e9 \u2713 \ud83d\ude00";
+
+    @EndpointInject(uri = "mock:utf8")
+    protected MockEndpoint mockUtf8Endpoint;
+
+    @EndpointInject(uri = "mock:raw")
+    protected MockEndpoint mockRawEndpoint;
+
+    @EndpointInject(uri = "mock:serialization")
+    protected MockEndpoint mockSerializationEndpoint;
+
+    @EndpointInject(uri = "mock:custom")
+    protected MockEndpoint mockCustomEndpoint;
+
+    @EndpointInject(uri = "mock:batch")
+    protected MockEndpoint mockBatchEndpoint;
+
+    @Test
+    public void testUtf8Encoding() throws Exception {
+        NatsCodecBuffer buffer = NatsCodecBuffer.acquire();
+        try {
+            byte[] payload = NatsCodecs.UTF8.encode(context.getEndpoint("direct:utf8").createExchange(), TEXT, buffer);
+            assertTrue(Arrays.equals(TEXT.getBytes("UTF-8"), payload));
+            assertEquals(TEXT, NatsCodecs.UTF8.decode(null, payload));
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testBufferReused() throws Exception {
+        NatsCodecBuffer buffer = NatsCodecBuffer.acquire();
+        // Nested use gets its own buffer
+        NatsCodecBuffer nested = NatsCodecBuffer.acquire();
+        assertNotSame(buffer, nested);
+        nested.release();
+        buffer.write(new byte[100], 0, 100);
+        buffer.release();
+
+        NatsCodecBuffer again = NatsCodecBuffer.acquire();
+        assertSame(buffer, again);
+        assertEquals(0, again.size());
+        again.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodec() throws Exception {
+        NatsCodecs.forName("lz4");
+    }
+
+    @Test
+    public void testUtf8() throws Exception {
+        mockUtf8Endpoint.expectedBodiesReceived(TEXT, "42");
+
+        template.sendBody("direct:utf8", TEXT);
+        template.sendBody("direct:utf8", 42);
+
+        mockUtf8Endpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void testRaw() throws Exception {
+        mockRawEndpoint.expectedMessageCount(1);
+
+        template.sendBody("direct:raw", new byte[] {1, 2, 3});
+
+        mockRawEndpoint.assertIsSatisfied();
+        byte[] body = (byte[]) mockRawEndpoint.getReceivedExchanges().get(0).getIn().getBody();
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3}, body));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        mockSerializationEndpoint.expectedBodiesReceived(new Price("NATS", 42));
+
+        template.sendBody("direct:serialization", new Price("NATS", 42));
+
+        mockSerializationEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void testSerializationAllowedClasses() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("prices", new Integer[] {1, 2});
+        map.put("raw", new byte[] {1});
+        NatsCodecBuffer buffer = NatsCodecBuffer.acquire();
+        try {
+            byte[] payload = NatsCodecs.SERIALIZATION.encode(null, map, buffer);
+            assertEquals(map.keySet(), ((Map<?, ?>) NatsCodecs.SERIALIZATION.decode(null, payload)).keySet());
+        } finally {
+            buffer.release();
+        }
+
+        buffer = NatsCodecBuffer.acquire();
+        try {
+            byte[] payload = NatsCodecs.SERIALIZATION.encode(null, new Price[] {new Price("NATS", 42)}, buffer);
+            assertEquals(1, ((Price[]) NatsCodecs.serialization(Price.class.getName()).decode(null, payload)).length);
+            try {
+                NatsCodecs.SERIALIZATION.decode(null, payload);
+                fail("Price is not allowed by default");
+            } catch (InvalidClassException e) {
+                // expected
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testCodecFromRegistry() throws Exception {
+        mockCustomEndpoint.expectedBodiesReceived("HELLO");
+
+        template.sendBody("direct:custom", "hello");
+
+        mockCustomEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        mockBatchEndpoint.expectedMessageCount(1);
+
+        template.sendBody("direct:batch", "one");
+        template.sendBody("direct:batch", "two");
+
+        mockBatchEndpoint.assertIsSatisfied();
+        assertEquals(Arrays.asList("one", "two"), mockBatchEndpoint.getReceivedExchanges().get(0).getIn().getBody());
+    }
+
+    @Test
+    public void testRequestReply() throws Exception {
+        assertEquals("pong:" + TEXT, template.requestBody("direct:request", TEXT, String.class));
+    }
+
+    @Override
+    protected JndiRegistry createRegistry() throws Exception {
+        JndiRegistry registry = super.createRegistry();
+        registry.bind("upperCase", new UpperCaseCodec());
+        return registry;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:utf8").to("nats://" + getNatsServers() + "?topic=codec.utf8&codec=utf8");
+                from("nats://" + getNatsServers() + "?topic=codec.utf8&codec=utf8").to(mockUtf8Endpoint);
+
+                from("direct:raw").to("nats://" + getNatsServers() + "?topic=codec.raw&codec=raw");
+                from("nats://" + getNatsServers() + "?topic=codec.raw&codec=raw").to(mockRawEndpoint);
+
+                from("direct:serialization").to("nats://" + getNatsServers() + "?topic=codec.serialization&codec=serialization");
+                from("nats://" + getNatsServers() + "?topic=codec.serialization&codec=serialization"
+                    + "&serializationAllowedClasses=org.apache.camel.component.nats.*").to(mockSerializationEndpoint);
+
+                from("direct:custom").to("nats://" + getNatsServers() + "?topic=codec.custom&codec=#upperCase");
+                from("nats://" + getNatsServers() + "?topic=codec.custom&codec=utf8").to(mockCustomEndpoint);
+
+                from("direct:batch").to("nats://" + getNatsServers() + "?topic=codec.batch&codec=utf8");
+                from("nats://" + getNatsServers() + "?topic=codec.batch&codec=utf8&batchSize=2&batchTimeout=5000").to(mockBatchEndpoint);
+
+                from("direct:request").to("nats://" + getNatsServers() + "?topic=codec.rpc&requestReply=true&codec=utf8");
+                from("nats://" + getNatsServers() + "?topic=codec.rpc&codec=utf8").transform(body().prepend("pong:"));
+            }
+        };
+    }
+
+    private static final class UpperCaseCodec implements NatsCodec {
+
+        @Override
+        public byte[] encode(Exchange exchange, Object body, NatsCodecBuffer buffer) throws Exception {
+            byte[] text = body.toString().getBytes("UTF-8");
+            for (byte b : text) {
+                buffer.write(Character.toUpperCase((char) b));
+            }
+            return buffer.toByteArray();
+        }
+
+        @Override
+        public Object decode(Exchange exchange, byte[] payload) throws Exception {
+            return new String(payload, "UTF-8").toLowerCase();
+        }
+    }
+
+    public static final class Price implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String symbol;
+        private final int value;
+
+        public Price(String symbol, int value) {
+            this.symbol = symbol;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Price && ((Price) other).symbol.equals(symbol) && ((Price) other).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return symbol.hashCode() * 31 + value;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.nats.client.Message;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.RuntimeCamelException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsCompressionTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @EndpointInject(uri = "mock:raw")
+    protected MockEndpoint mockRawEndpoint;
+
+    @EndpointInject(uri = "mock:limited")
+    protected MockEndpoint mockLimitedEndpoint;
+
+    private final AtomicBoolean receivedCompressed = new AtomicBoolean();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] payload = payload(64 * 1024);
+        byte[] compressed = NatsCompressor.compress(NatsCompression.DEFLATE, payload, 1024);
+        assertTrue(compressed.length < payload.length);
+        assertTrue(NatsCompressor.isCompressed(compressed));
+        assertFalse(NatsCompressor.isCompressed(payload));
+
+        Message message = new Message("compression", null, compressed);
+        NatsCompressor.decompress(message);
+        assertTrue(Arrays.equals(payload, message.getData()));
+    }
+
+    @Test
+    public void testSentAsIs() throws Exception {
+        byte[] small = payload(512);
+        assertSame(small, NatsCompressor.compress(NatsCompression.DEFLATE, small, 1024));
+        byte[] large = payload(4096);
+        assertSame(large, NatsCompressor.compress(NatsCompression.NONE, large, 1024));
+
+        // Random bytes do not get any smaller
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        assertSame(random, NatsCompressor.compress(NatsCompression.DEFLATE, random, 1024));
+    }
+
+    @Test(expected = RuntimeCamelException.class)
+    public void testCorruptPayload() throws Exception {
+        byte[] compressed = NatsCompressor.compress(NatsCompression.DEFLATE, payload(4096), 1024);
+        compressed[compressed.length / 2] ^= 0x55;
+        compressed[compressed.length / 2 + 1] ^= 0x55;
+        NatsCompressor.decompress(new Message("compression", null, compressed));
+    }
+
+    @Test(expected = RuntimeCamelException.class)
+    public void testOversizeLength() throws Exception {
+        byte[] compressed = NatsCompressor.compress(NatsCompression.DEFLATE, payload(4096), 1024);
+        compressed[3] = 0x7F;
+        compressed[4] = (byte) 0xFF;
+        NatsCompressor.decompress(new Message("compression", null, compressed));
+    }
+
+    @Test
+    public void testMarkerWithoutZlibHeader() throws Exception {
+        byte[] data = new byte[] {(byte) 0xC1, 'Z', 1, 0, 0, 0, 4, 'a', 'b', 'c', 'd'};
+        assertFalse(NatsCompressor.isCompressed(data));
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        mockLimitedEndpoint.expectedMessageCount(1);
+        mockResultEndpoint.expectedMessageCount(2);
+
+        template.sendBody("direct:send", payload(64 * 1024));
+        template.sendBody("direct:send", "small");
+
+        mockResultEndpoint.assertIsSatisfied();
+        mockLimitedEndpoint.assertIsSatisfied();
+        Message received = mockLimitedEndpoint.getReceivedExchanges().get(0).getIn().getBody(Message.class);
+        assertEquals("small", new String(received.getData(), "UTF-8"));
+    }
+
+    @Test
+    public void testCompressedTransfer() throws Exception {
+        byte[] payload = payload(64 * 1024);
+        mockResultEndpoint.expectedMessageCount(2);
+        mockRawEndpoint.expectedMessageCount(2);
+
+        template.sendBody("direct:send", payload);
+        template.sendBody("direct:send", "small");
+
+        mockResultEndpoint.assertIsSatisfied();
+        mockRawEndpoint.assertIsSatisfied();
+        assertTrue(receivedCompressed.get());
+
+        Message received = mockResultEndpoint.getReceivedExchanges().get(0).getIn().getBody(Message.class);
+        assertTrue(Arrays.equals(payload, received.getData()));
+        received = mockResultEndpoint.getReceivedExchanges().get(1).getIn().getBody(Message.class);
+        assertEquals("small", new String(received.getData(), "UTF-8"));
+
+        // Consumers without compression get what was sent on the wire
+        Message raw = mockRawEndpoint.getReceivedExchanges().get(0).getIn().getBody(Message.class);
+        assertTrue(NatsCompressor.isCompressed(raw.getData()));
+        assertTrue(raw.getData().length < payload.length / 10);
+        raw = mockRawEndpoint.getReceivedExchanges().get(1).getIn().getBody(Message.class);
+        assertEquals("small", new String(raw.getData(), "UTF-8"));
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) ('a' + (i % 7) + (i / 1000) % 3);
+        }
+        return payload;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=compressed&compression=DEFLATE&compressionThreshold=1024");
+                from("nats://" + getNatsServers() + "?topic=compressed&compression=DEFLATE")
+                    .process(new Processor() {
+                        @Override
+                        public void process(Exchange exchange) throws Exception {
+                            NatsMessage message = exchange.getIn(NatsMessage.class);
+                            if (message.isCompressed()) {
+                                receivedCompressed.set(true);
+                            }
+                        }
+                    })
+                    .to(mockResultEndpoint);
+                from("nats://" + getNatsServers() + "?topic=compressed").to(mockRawEndpoint);
+                from("nats://" + getNatsServers() + "?topic=compressed&compression=DEFLATE&compressionMaxSize=4096")
+                    .to(mockLimitedEndpoint);
+            }
+        };
+    }
+}
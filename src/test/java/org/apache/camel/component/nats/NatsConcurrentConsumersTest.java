@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsConcurrentConsumersTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    @Test
+    public void testOneSubscriptionManyWorkers() throws Exception {
+        mockResultEndpoint.expectedMessageCount(40);
+
+        for (int i = 0; i < 40; i++) {
+            template.sendBody("direct:send", "concurrent" + i);
+        }
+
+        mockResultEndpoint.assertIsSatisfied();
+        assertTrue("Expected several worker threads, got " + threads, threads.size() > 1);
+        NatsComponent component = context.getComponent("nats", NatsComponent.class);
+        assertEquals(1, component.getConnectionRegistry().getConnectionCount());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=concurrent");
+                from("nats://" + getNatsServers() + "?topic=concurrent&concurrentConsumers=8")
+                    .process(new Processor() {
+                        @Override
+                        public void process(Exchange exchange) throws Exception {
+                            threads.add(Thread.currentThread().getName());
+                            Thread.sleep(20);
+                        }
+                    })
+                    .to(mockResultEndpoint);
+            }
+        };
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.List;
+
+import io.nats.client.Message;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsConsumerBatchTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testBatchesBySizeThenTimeout() throws Exception {
+        mockResultEndpoint.expectedMessageCount(3);
+        mockResultEndpoint.expectedHeaderValuesReceivedInAnyOrder(NatsConstants.NATS_BATCH_COMPLETED_BY,
+                NatsBatcher.COMPLETED_BY_SIZE, NatsBatcher.COMPLETED_BY_SIZE, NatsBatcher.COMPLETED_BY_TIMEOUT);
+
+        for (int i = 0; i < 25; i++) {
+            template.sendBody("direct:send", "batch" + i);
+        }
+
+        mockResultEndpoint.assertIsSatisfied();
+
+        int i = 0;
+        for (Exchange exchange : mockResultEndpoint.getExchanges()) {
+            List<?> batch = exchange.getIn().getBody(List.class);
+            assertEquals(batch.size(), exchange.getIn().getHeader(NatsConstants.NATS_BATCH_SIZE));
+            for (Object element : batch) {
+                assertEquals("batch" + i++, new String(((Message) element).getData(), "UTF-8"));
+            }
+        }
+        assertEquals(25, i);
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=batches");
+                from("nats://" + getNatsServers() + "?topic=batches&batchSize=10&batchTimeout=500").to(mockResultEndpoint);
+            }
+        };
+    }
+}
@@ -25,12 +25,9 @@ import io.nats.client.ConnectionFactory;
 import org.apache.camel.EndpointInject;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
-import org.apache.camel.test.junit4.CamelTestSupport;
-import org.junit.Ignore;
 import org.junit.Test;
 
-//@Ignore("Require a running Nats server")
-public class NatsConsumerLoadTest extends CamelTestSupport {
+public class NatsConsumerLoadTest extends NatsTestSupport {
     
     @EndpointInject(uri = "mock:result")
     protected MockEndpoint mockResultEndpoint;
@@ -38,7 +35,7 @@ public class NatsConsumerLoadTest extends CamelTestSupport {
     @Test
     public void testLoadConsumer() throws InterruptedException, IOException, TimeoutException {
         mockResultEndpoint.setExpectedMessageCount(1000);
-        ConnectionFactory cf = new ConnectionFactory("nats://localhost:4222");
+        ConnectionFactory cf = new ConnectionFactory("nats://" + getNatsServers());
         Connection connection = cf.createConnection();
 
         for (int i = 0; i < 1000; i++) {
@@ -53,8 +50,8 @@ public class NatsConsumerLoadTest extends CamelTestSupport {
         return new RouteBuilder() {
             @Override
             public void configure() throws Exception {
-                from("direct:send").to("nats://localhost:4222?topic=test");
-                from("nats://localhost:4222?topic=test&queueName=test&poolSize=1").to(mockResultEndpoint);
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=test");
+                from("nats://" + getNatsServers() + "?topic=test&queueName=test&poolSize=1").to(mockResultEndpoint);
             }
         };
     }
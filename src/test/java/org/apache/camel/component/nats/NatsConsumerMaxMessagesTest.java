@@ -21,12 +21,9 @@ import java.io.IOException;
 import org.apache.camel.EndpointInject;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
-import org.apache.camel.test.junit4.CamelTestSupport;
-import org.junit.Ignore;
 import org.junit.Test;
 
-//@Ignore("Require a running Nats server")
-public class NatsConsumerMaxMessagesTest extends CamelTestSupport {
+public class NatsConsumerMaxMessagesTest extends NatsTestSupport {
 
     @EndpointInject(uri = "mock:result")
     protected MockEndpoint mockResultEndpoint;
@@ -56,8 +53,8 @@ public class NatsConsumerMaxMessagesTest extends CamelTestSupport {
         return new RouteBuilder() {
             @Override
             public void configure() throws Exception {
-                from("direct:send").to("nats://localhost:4222?topic=test");
-                from("nats://localhost:4222?topic=test&maxMessages=5&poolSize=1&queueName=test").to(mockResultEndpoint);
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=test");
+                from("nats://" + getNatsServers() + "?topic=test&maxMessages=5&poolSize=1&queueName=test").to(mockResultEndpoint);
             }
         };
     }
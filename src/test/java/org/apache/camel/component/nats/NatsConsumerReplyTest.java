@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import io.nats.client.Message;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.ExchangeTimedOutException;
+import org.apache.camel.builder.RouteBuilder;
+import org.junit.Test;
+
+public class NatsConsumerReplyTest extends NatsTestSupport {
+
+    @Test
+    public void testConsumerReplies() throws Exception {
+        List<Future<Object>> replies = new ArrayList<Future<Object>>();
+        for (int i = 0; i < 50; i++) {
+            replies.add(template.asyncRequestBody("direct:request", "hello" + i));
+        }
+
+        for (int i = 0; i < 50; i++) {
+            Message reply = (Message) replies.get(i).get();
+            assertEquals("Reply to hello" + i, new String(reply.getData(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testDisableReplyTo() throws Exception {
+        try {
+            template.requestBody("direct:ignored", "hello");
+            fail("Should have timed out");
+        } catch (CamelExecutionException e) {
+            assertIsInstanceOf(ExchangeTimedOutException.class, e.getCause());
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:request").to("nats://" + getNatsServers() + "?topic=service&requestReply=true");
+                from("direct:ignored").to("nats://" + getNatsServers() + "?topic=noreply&requestReply=true&requestTimeout=300");
+
+                from("nats://" + getNatsServers() + "?topic=service")
+                    .transform(simple("Reply to ${body.data}"))
+                    .convertBodyTo(String.class);
+                from("nats://" + getNatsServers() + "?topic=noreply&disableReplyTo=true")
+                    .transform(constant("Never sent"));
+            }
+        };
+    }
+}
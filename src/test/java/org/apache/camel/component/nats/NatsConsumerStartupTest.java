@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.util.ObjectHelper;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NatsConsumerStartupTest extends NatsTestSupport {
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        // Latency and refused connections are only possible with the embedded server
+        Assume.assumeNotNull(getNatsServer());
+        super.setUp();
+    }
+
+    @After
+    public void resetServer() {
+        getNatsServer().setLatency(0, TimeUnit.MILLISECONDS);
+        getNatsServer().setMaxClients(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testConnectionsInParallel() throws Exception {
+        // Each connection waits for the INFO and the PONG of its handshake
+        getNatsServer().setLatency(300, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        addRoute("nats://" + getNatsServers() + "?topic=startup&poolSize=4&sharedConnection=false");
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // One after the other they would take 4 times 600 ms
+        assertTrue("Started in " + elapsed + " ms", elapsed < 2 * 600);
+        assertEquals(4, getNatsServer().getClientCount());
+    }
+
+    @Test
+    public void testStartWithSomeConnections() throws Exception {
+        getNatsServer().setMaxClients(2);
+        addRoute("nats://" + getNatsServers() + "?topic=startup&queueName=startup&poolSize=3&sharedConnection=false&startupMinConnections=2");
+        assertEquals(2, getNatsServer().getClientCount());
+
+        // Room for the producer
+        getNatsServer().setMaxClients(Integer.MAX_VALUE);
+        MockEndpoint mock = getMockEndpoint("mock:result");
+        mock.expectedMessageCount(1);
+        template.sendBody("nats://" + getNatsServers() + "?topic=startup", "hello");
+        mock.assertIsSatisfied();
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        getNatsServer().setMaxClients(2);
+        long start = System.nanoTime();
+        try {
+            addRoute("nats://" + getNatsServers() + "?topic=startup&poolSize=3&sharedConnection=false&startupTimeout=60000");
+            fail("Should not start with 2 of 3 connections");
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+        }
+    }
+
+    @Test
+    public void testStartupTimeout() throws Exception {
+        // Accepts connections (in its backlog) but never says anything
+        ServerSocket silent = new ServerSocket(0);
+        try {
+            long start = System.nanoTime();
+            try {
+                addRoute("nats://127.0.0.1:" + silent.getLocalPort()
+                        + "?topic=startup&connectionTimeout=60000&startupTimeout=500");
+                fail("Should have timed out");
+            } catch (Exception e) {
+                assertNotNull(ObjectHelper.getException(TimeoutException.class, e));
+                assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+            }
+        } finally {
+            silent.close();
+        }
+    }
+
+    private void addRoute(final String uri) throws Exception {
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from(uri).to("mock:result");
+            }
+        });
+    }
+}
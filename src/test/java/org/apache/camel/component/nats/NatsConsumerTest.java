@@ -22,12 +22,9 @@ import org.apache.camel.EndpointInject;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
-import org.apache.camel.test.junit4.CamelTestSupport;
-import org.junit.Ignore;
 import org.junit.Test;
 
-//@Ignore("Require a running Nats server")
-public class NatsConsumerTest extends CamelTestSupport {
+public class NatsConsumerTest extends NatsTestSupport {
 
     @EndpointInject(uri = "mock:result")
     protected MockEndpoint mockResultEndpoint;
@@ -47,8 +44,8 @@ public class NatsConsumerTest extends CamelTestSupport {
         return new RouteBuilder() {
             @Override
             public void configure() throws Exception {
-                from("direct:send").log(LoggingLevel.INFO, "message out").to("nats://localhost:4222?topic=test");
-                from("nats://localhost:4222?topic=test").log(LoggingLevel.INFO,"test message back").to(mockResultEndpoint);
+                from("direct:send").log(LoggingLevel.INFO, "message out").to("nats://" + getNatsServers() + "?topic=test");
+                from("nats://" + getNatsServers() + "?topic=test").log(LoggingLevel.INFO,"test message back").to(mockResultEndpoint);
             }
         };
     }
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.EndpointInject;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsDynamicSubjectTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testSubjectPerExchange() throws Exception {
+        mockResultEndpoint.expectedMessageCount(3);
+        mockResultEndpoint.expectedHeaderValuesReceivedInAnyOrder(NatsConstants.NATS_MESSAGE_SUBJECT,
+                "prices.EURUSD", "prices.USDJPY", "prices.EURUSD");
+        mockResultEndpoint.expectedHeaderValuesReceivedInAnyOrder(NatsConstants.NATS_MESSAGE_REPLY_TO,
+                "quotes.reply", "quotes.reply", "quotes.reply");
+
+        template.sendBodyAndHeader("direct:send", "1.1", NatsConstants.NATS_SUBJECT, "prices.EURUSD");
+        template.sendBodyAndHeader("direct:send", "150", NatsConstants.NATS_SUBJECT, "prices.USDJPY");
+        template.sendBodyAndHeader("direct:send", "1.2", NatsConstants.NATS_SUBJECT, "prices.EURUSD");
+
+        mockResultEndpoint.assertIsSatisfied();
+        assertEquals(1, context.getComponent("nats", NatsComponent.class).getConnectionRegistry().getConnectionCount());
+    }
+
+    @Test
+    public void testInvalidSubjects() throws Exception {
+        for (String subject : new String[] {"prices.*", "prices.>", "prices..EURUSD", "prices EURUSD", ".prices", ""}) {
+            try {
+                template.sendBodyAndHeader("direct:send", "1.1", NatsConstants.NATS_SUBJECT, subject);
+                fail("Should have refused " + subject);
+            } catch (CamelExecutionException e) {
+                assertIsInstanceOf(IllegalArgumentException.class, e.getCause());
+            }
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").setHeader(NatsConstants.NATS_REPLY_SUBJECT, constant("quotes.reply"))
+                    .to("nats://" + getNatsServers() + "?topic=prices.default&replySubject=unused");
+                from("nats://" + getNatsServers() + "?topic=prices.*&disableReplyTo=true").to(mockResultEndpoint);
+            }
+        };
+    }
+}
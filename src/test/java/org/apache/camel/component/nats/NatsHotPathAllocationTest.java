@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.lang.management.ManagementFactory;
+
+import io.nats.client.Message;
+import io.nats.connector.CamelNatsAdapter;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class NatsHotPathAllocationTest extends NatsTestSupport {
+
+    private static final int MESSAGES = 20000;
+
+    private final byte[] payload = new byte[128];
+
+    @Test
+    public void testPublishAllocation() throws Exception {
+        NatsEndpoint endpoint = context.getEndpoint("nats://" + getNatsServers() + "?topic=allocation&flushPolicy=NEVER", NatsEndpoint.class);
+        final NatsProducer producer = (NatsProducer) endpoint.createProducer();
+        producer.start();
+        try {
+            final Exchange exchange = createExchangeWithBody(payload);
+            final AsyncCallback callback = new AsyncCallback() {
+                @Override
+                public void done(boolean doneSync) {
+                }
+            };
+
+            long bytesPerMessage = allocatedPerMessage(new Runnable() {
+                @Override
+                public void run() {
+                    producer.process(exchange, callback);
+                }
+            });
+            log.info("Publish: {} bytes allocated per message", bytesPerMessage);
+            // The client encodes the subject and the size for every message
+            assertTrue("Publishing should barely allocate, got " + bytesPerMessage, bytesPerMessage < 160);
+            assertNull(exchange.getException());
+        } finally {
+            producer.stop();
+        }
+    }
+
+    @Test
+    public void testReceiveAllocation() throws Exception {
+        NatsEndpoint endpoint = context.getEndpoint("nats://" + getNatsServers() + "?topic=allocation", NatsEndpoint.class);
+        NatsConsumer consumer = (NatsConsumer) endpoint.createConsumer(new Processor() {
+            @Override
+            public void process(Exchange exchange) throws Exception {
+            }
+        });
+        final CamelNatsAdapter adapter = new CamelNatsAdapter(consumer, endpoint.getNatsConfiguration().createProperties(),
+                LoggerFactory.getLogger(NatsConsumer.class));
+        final Message message = new Message("allocation", null, payload);
+
+        long bytesPerMessage = allocatedPerMessage(new Runnable() {
+            @Override
+            public void run() {
+                adapter.onNATSMessage(message);
+            }
+        });
+        log.info("Receive: {} bytes allocated per message", bytesPerMessage);
+        // Just the exchange and its message, no headers nor log strings
+        assertTrue("Receiving should only allocate the exchange, got " + bytesPerMessage, bytesPerMessage < 160);
+    }
+
+    private static long allocatedPerMessage(Runnable hotPath) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        long threadId = Thread.currentThread().getId();
+        // Warm up, so that the JIT does not count
+        for (int i = 0; i < MESSAGES; i++) {
+            hotPath.run();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MESSAGES; i++) {
+            hotPath.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / MESSAGES;
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+import io.nats.client.Message;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.Producer;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NatsLocalDeliveryTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:local")
+    protected MockEndpoint mockLocalEndpoint;
+
+    @EndpointInject(uri = "mock:wildcard")
+    protected MockEndpoint mockWildcardEndpoint;
+
+    @EndpointInject(uri = "mock:remote")
+    protected MockEndpoint mockRemoteEndpoint;
+
+    @EndpointInject(uri = "mock:plain")
+    protected MockEndpoint mockPlainEndpoint;
+
+    @EndpointInject(uri = "mock:chunks")
+    protected MockEndpoint mockChunksEndpoint;
+
+    private final Set<Thread> localThreads = new CopyOnWriteArraySet<Thread>();
+    private volatile long localDelay;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        // The server latency tells local deliveries from the server ones
+        Assume.assumeNotNull(getNatsServer());
+        getNatsServer().setMaxPayload(1024);
+        super.setUp();
+    }
+
+    @After
+    public void resetServer() {
+        getNatsServer().setLatency(0, TimeUnit.MILLISECONDS);
+        getNatsServer().setMaxPayload(1024 * 1024);
+    }
+
+    @Test
+    public void testLocalDelivery() throws Exception {
+        getNatsServer().setLatency(300, TimeUnit.MILLISECONDS);
+
+        mockLocalEndpoint.expectedMessageCount(10);
+        mockLocalEndpoint.expectedHeaderReceived(NatsConstants.NATS_SUBSCRIPTION_SUBJECT, "local.prices");
+        mockWildcardEndpoint.expectedMessageCount(10);
+        mockWildcardEndpoint.expectedHeaderReceived(NatsConstants.NATS_SUBSCRIPTION_SUBJECT, "local.*");
+        mockRemoteEndpoint.expectedMessageCount(10);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            template.sendBody("direct:send", "price " + i);
+        }
+        // Without the round trip through the (slow) server, not even to flush
+        mockLocalEndpoint.assertIsSatisfied();
+        mockWildcardEndpoint.assertIsSatisfied();
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(0, mockRemoteEndpoint.getReceivedCounter());
+
+        // Still published for the other subscribers, the copies sent back to the local ones being dropped
+        mockRemoteEndpoint.assertIsSatisfied();
+        Thread.sleep(500);
+        assertEquals(10, mockLocalEndpoint.getReceivedCounter());
+        assertEquals(10, mockWildcardEndpoint.getReceivedCounter());
+        Message first = mockLocalEndpoint.getReceivedExchanges().get(0).getIn().getBody(Message.class);
+        assertEquals("price 0", new String(first.getData(), "UTF-8"));
+    }
+
+    @Test
+    public void testIdenticalRemoteMessageNotDropped() throws Exception {
+        mockLocalEndpoint.expectedMessageCount(2);
+
+        template.sendBody("direct:send", "heartbeat");
+        // Same subject and payload, from a producer without local delivery
+        template.sendBody("direct:sendRemote", "heartbeat");
+
+        mockLocalEndpoint.assertIsSatisfied();
+        Thread.sleep(300);
+        assertEquals(2, mockLocalEndpoint.getReceivedCounter());
+        for (int i = 0; i < 2; i++) {
+            Message received = mockLocalEndpoint.getReceivedExchanges().get(i).getIn().getBody(Message.class);
+            assertEquals("heartbeat", new String(received.getData(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testProcessedOnConsumerThread() throws Exception {
+        mockLocalEndpoint.expectedMessageCount(6);
+        localDelay = 50;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            template.sendBody("direct:send", "price " + i);
+        }
+        // The producer does not wait for the (slow) local route
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+        template.sendBody("direct:sendRemote", "remote");
+
+        mockLocalEndpoint.assertIsSatisfied();
+        // One at a time, local or from the server, in the order they were published
+        assertEquals(1, localThreads.size());
+        assertFalse(localThreads.contains(Thread.currentThread()));
+        for (int i = 0; i < 5; i++) {
+            Message received = mockLocalEndpoint.getReceivedExchanges().get(i).getIn().getBody(Message.class);
+            assertEquals("price " + i, new String(received.getData(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testTooLargeOnceTagged() throws Exception {
+        // Fits in the max_payload, but not with the tag
+        byte[] payload = new byte[1010];
+        mockLocalEndpoint.expectedMessageCount(1);
+
+        template.sendBody("direct:send", payload);
+
+        // Got from the server, untagged
+        mockLocalEndpoint.assertIsSatisfied();
+        Thread.sleep(300);
+        assertEquals(1, mockLocalEndpoint.getReceivedCounter());
+        Message received = mockLocalEndpoint.getReceivedExchanges().get(0).getIn().getBody(Message.class);
+        assertEquals(1010, received.getData().length);
+    }
+
+    @Test
+    public void testChunksWithinMaxPayload() throws Exception {
+        byte[] payload = new byte[5000];
+        new Random(5000).nextBytes(payload);
+        mockChunksEndpoint.expectedMessageCount(1);
+
+        template.sendBody("direct:sendChunks", payload);
+
+        mockChunksEndpoint.assertIsSatisfied();
+        assertTrue(Arrays.equals(payload, mockChunksEndpoint.getReceivedExchanges().get(0).getIn().getBody(byte[].class)));
+        Thread.sleep(300);
+        assertEquals(1, mockChunksEndpoint.getReceivedCounter());
+    }
+
+    @Test
+    public void testPayloadsUntouchedWithoutLocalDelivery() throws Exception {
+        byte[] payload = new byte[30];
+        payload[0] = (byte) 0xC1;
+        payload[1] = 'L';
+        mockPlainEndpoint.expectedMessageCount(1);
+
+        template.sendBody("direct:sendPlain", payload);
+
+        mockPlainEndpoint.assertIsSatisfied();
+        Message received = mockPlainEndpoint.getReceivedExchanges().get(0).getIn().getBody(Message.class);
+        assertEquals(30, received.getData().length);
+    }
+
+    @Test
+    public void testProducerRequiresTag() throws Exception {
+        Producer producer = context.getEndpoint("nats://" + getNatsServers() + "?topic=local.prices&localDelivery=true")
+            .createProducer();
+        try {
+            producer.start();
+            fail("Should have required localDeliveryTag");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("localDeliveryTag"));
+        } finally {
+            producer.stop();
+        }
+    }
+
+    @Test
+    public void testNotDeliveredWhenNotPublished() throws Exception {
+        try {
+            // Over the max_payload of the server
+            template.sendBody("direct:send", new byte[2 * 1024 * 1024]);
+            fail("Should have failed to publish");
+        } catch (CamelExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+
+        Thread.sleep(300);
+        assertEquals(0, mockLocalEndpoint.getReceivedCounter());
+        assertEquals(0, mockWildcardEndpoint.getReceivedCounter());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:sendRemote").to("nats://" + getNatsServers() + "?topic=local.prices");
+                from("direct:send").to("nats://" + getNatsServers()
+                    + "?topic=local.prices&localDelivery=true&localDeliveryTag=true&flushPolicy=NEVER");
+                from("nats://" + getNatsServers() + "?topic=local.prices&localDelivery=true")
+                    .process(new Processor() {
+                        @Override
+                        public void process(Exchange exchange) throws Exception {
+                            localThreads.add(Thread.currentThread());
+                            Thread.sleep(localDelay);
+                        }
+                    })
+                    .to(mockLocalEndpoint);
+                from("nats://" + getNatsServers() + "?topic=local.*&localDelivery=true").to(mockWildcardEndpoint);
+                from("direct:sendChunks").to("nats://" + getNatsServers()
+                    + "?topic=local.chunks&localDelivery=true&localDeliveryTag=true&chunked=true");
+                from("nats://" + getNatsServers() + "?topic=local.chunks&localDelivery=true&chunked=true")
+                    .convertBodyTo(byte[].class).to(mockChunksEndpoint);
+                from("direct:sendPlain").to("nats://" + getNatsServers() + "?topic=plain");
+                from("nats://" + getNatsServers() + "?topic=plain").to(mockPlainEndpoint);
+                // Only gets the messages from the server
+                from("nats://" + getNatsServers() + "?topic=local.prices&queueName=remote&localDelivery=true").to(mockRemoteEndpoint);
+            }
+        };
+    }
+}
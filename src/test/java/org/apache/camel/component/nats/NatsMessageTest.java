@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import io.nats.client.Message;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsMessageTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testHeadersCreatedOnDemand() throws Exception {
+        Message received = new Message("orders.eu", "replies", "hello".getBytes("UTF-8"));
+        InspectedMessage message = new InspectedMessage(received, 1234L);
+
+        assertEquals("orders.eu", message.getSubject());
+        assertEquals("replies", message.getReplyTo());
+        assertEquals(1234L, message.getReceivedTime());
+        assertSame(received.getData(), message.getPayload());
+        assertSame(received, message.getBody());
+        assertFalse(message.hasPopulatedHeaders());
+
+        assertEquals("orders.eu", message.getHeader(NatsConstants.NATS_MESSAGE_SUBJECT));
+        assertEquals("replies", message.getHeader(NatsConstants.NATS_MESSAGE_REPLY_TO));
+        assertEquals(1234L, message.getHeader(NatsConstants.NATS_MESSAGE_TIMESTAMP));
+        assertTrue(message.hasPopulatedHeaders());
+
+        org.apache.camel.Message copy = message.copy();
+        assertFalse(copy instanceof NatsMessage);
+        assertEquals("orders.eu", copy.getHeader(NatsConstants.NATS_MESSAGE_SUBJECT));
+    }
+
+    @Test
+    public void testConsumedExchange() throws Exception {
+        mockResultEndpoint.expectedBodiesReceived("lazy");
+        mockResultEndpoint.expectedHeaderReceived(NatsConstants.NATS_MESSAGE_SUBJECT, "lazymessage");
+
+        template.sendBody("direct:send", "lazy");
+
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    private static final class InspectedMessage extends NatsMessage {
+
+        InspectedMessage(Message natsMessage, long receivedTime) {
+            super(natsMessage, receivedTime);
+        }
+
+        // Protected in DefaultMessage
+        @Override
+        protected boolean hasPopulatedHeaders() {
+            return super.hasPopulatedHeaders();
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=lazymessage");
+                from("nats://" + getNatsServers() + "?topic=lazymessage")
+                    .process(new Processor() {
+                        @Override
+                        public void process(Exchange exchange) throws Exception {
+                            NatsMessage message = exchange.getIn(NatsMessage.class);
+                            exchange.getIn().setBody(new String(message.getPayload(), "UTF-8"));
+                        }
+                    })
+                    .to(mockResultEndpoint);
+            }
+        };
+    }
+}
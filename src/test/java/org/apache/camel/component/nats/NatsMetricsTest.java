@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsMetricsTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testHistogram() throws Exception {
+        NatsLatencyHistogram histogram = new NatsLatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(128, histogram.getPercentileMicros(0.5));
+        assertEquals(8192, histogram.getPercentileMicros(0.99));
+        assertEquals(65536, histogram.getPercentileMicros(1.0));
+        assertEquals(50000, histogram.getMaxMicros(), 0.001);
+        assertEquals(648, histogram.getMeanMicros(), 0.001);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(0.99));
+    }
+
+    @Test
+    public void testMessageCounters() throws Exception {
+        mockResultEndpoint.expectedMessageCount(10);
+        for (int i = 0; i < 10; i++) {
+            template.sendBody("direct:send", "0123456789");
+        }
+        mockResultEndpoint.assertIsSatisfied();
+
+        NatsConsumer consumer = (NatsConsumer) context.getRoute("receive").getConsumer();
+        assertEquals(10, consumer.getMessagesIn());
+        assertEquals(100, consumer.getBytesIn());
+
+        // The producer is only reachable through JMX, where the consumer is exposed as well
+        assertEquals(10L, getAttribute("producers", "MessagesOut"));
+        assertEquals(100L, getAttribute("producers", "BytesOut"));
+        assertTrue((Long) getAttribute("producers", "PublishLatencyP99") > 0);
+        assertEquals(10L, getAttribute("consumers", "MessagesIn"));
+        assertEquals("metrics", getAttribute("endpoints", "Topic"));
+
+        consumer.resetStatistics();
+        assertEquals(0, consumer.getMessagesIn());
+    }
+
+    private Object getAttribute(String type, String attribute) throws Exception {
+        MBeanServer server = context.getManagementStrategy().getManagementAgent().getMBeanServer();
+        ObjectName query = new ObjectName("org.apache.camel:context=" + context.getManagementName() + ",type=" + type + ",*");
+        for (ObjectName name : server.queryNames(query, null)) {
+            for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes()) {
+                if (info.getName().equals(attribute)) {
+                    return server.getAttribute(name, attribute);
+                }
+            }
+        }
+        fail("No " + attribute + " attribute in the " + type);
+        return null;
+    }
+
+    @Override
+    protected boolean useJmx() {
+        return true;
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").routeId("send").to("nats://" + getNatsServers() + "?topic=metrics");
+                from("nats://" + getNatsServers() + "?topic=metrics").routeId("receive").to(mockResultEndpoint);
+            }
+        };
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsMultipleSubjectsTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testSubjectsAndWildcards() throws Exception {
+        mockResultEndpoint.expectedMessageCount(4);
+        mockResultEndpoint.expectedHeaderValuesReceivedInAnyOrder(NatsConstants.NATS_SUBSCRIPTION_SUBJECT,
+                "orders.*", "orders.*", "trades.>", "audit");
+
+        template.sendBody("nats://" + getNatsServers() + "?topic=orders.eu", "1");
+        template.sendBody("nats://" + getNatsServers() + "?topic=orders.us", "2");
+        template.sendBody("nats://" + getNatsServers() + "?topic=trades.eu.fx", "3");
+        template.sendBody("nats://" + getNatsServers() + "?topic=audit", "4");
+        template.sendBody("nats://" + getNatsServers() + "?topic=orders.eu.late", "5");
+
+        mockResultEndpoint.assertIsSatisfied();
+        assertEquals(1, context.getComponent("nats", NatsComponent.class).getConnectionRegistry().getConnectionCount());
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("nats://" + getNatsServers() + "?topic=orders.*, trades.>,audit").to(mockResultEndpoint);
+            }
+        };
+    }
+}
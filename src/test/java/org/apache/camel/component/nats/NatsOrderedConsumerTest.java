@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.nats.client.Message;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultMessage;
+import org.junit.Test;
+
+public class NatsOrderedConsumerTest extends NatsTestSupport {
+
+    private static final String[] KEYS = {"A", "B", "C", "D"};
+    private static final int MESSAGES_PER_KEY = 25;
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    private final Map<String, List<Integer>> received = new ConcurrentHashMap<String, List<Integer>>();
+    private final Random random = new Random();
+
+    @Test
+    public void testOrderPerKey() throws Exception {
+        mockResultEndpoint.expectedMessageCount(KEYS.length * MESSAGES_PER_KEY);
+
+        // Interleaved keys, published as one batch so that every subject keeps its order on the wire
+        List<org.apache.camel.Message> batch = new ArrayList<org.apache.camel.Message>();
+        for (int i = 0; i < MESSAGES_PER_KEY; i++) {
+            for (String key : KEYS) {
+                org.apache.camel.Message message = new DefaultMessage();
+                message.setHeader(NatsConstants.NATS_SUBJECT, "ordered." + key);
+                message.setBody(String.valueOf(i));
+                batch.add(message);
+            }
+        }
+        template.sendBody("direct:send", batch);
+
+        mockResultEndpoint.assertIsSatisfied();
+        for (String key : KEYS) {
+            List<Integer> sequence = received.get(key);
+            for (int i = 0; i < MESSAGES_PER_KEY; i++) {
+                assertEquals("Order lost for key " + key + ": " + sequence, Integer.valueOf(i), sequence.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testSubjectToken() {
+        assertEquals("ordered", NatsOrderedDispatcher.token("ordered.A.x", 0));
+        assertEquals("A", NatsOrderedDispatcher.token("ordered.A.x", 1));
+        assertEquals("x", NatsOrderedDispatcher.token("ordered.A.x", 2));
+        assertNull(NatsOrderedDispatcher.token("ordered.A.x", 3));
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=ordered");
+                from("nats://" + getNatsServers() + "?topic=ordered.*&concurrentConsumers=4&orderingKey=subjectToken:1")
+                    .process(new Processor() {
+                        @Override
+                        public void process(Exchange exchange) throws Exception {
+                            Message message = exchange.getIn().getBody(Message.class);
+                            String key = NatsOrderedDispatcher.token(message.getSubject(), 1);
+                            List<Integer> sequence = received.get(key);
+                            if (sequence == null) {
+                                received.putIfAbsent(key, new CopyOnWriteArrayList<Integer>());
+                                sequence = received.get(key);
+                            }
+                            Thread.sleep(random.nextInt(3));
+                            sequence.add(Integer.valueOf(new String(message.getData())));
+                        }
+                    })
+                    .to(mockResultEndpoint);
+            }
+        };
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class NatsPayloadsTest extends CamelTestSupport {
+
+    private static final int MESSAGES = 10000;
+    private static final int PAYLOAD_SIZE = 1024;
+
+    private final byte[] payload = new byte[PAYLOAD_SIZE];
+
+    @Test
+    public void testBinaryBodiesAreNotCopied() throws Exception {
+        Exchange exchange = createExchangeWithBody(null);
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+
+        assertSame(payload, NatsPayloads.toBytes(exchange, payload, null));
+        assertSame(payload, NatsPayloads.toBytes(exchange, buffer, null));
+    }
+
+    @Test
+    public void testSlicedByteBuffer() throws Exception {
+        Exchange exchange = createExchangeWithBody(null);
+        byte[] bytes = "0123456789".getBytes("US-ASCII");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 2, 3);
+
+        assertArrayEquals("234".getBytes("US-ASCII"), NatsPayloads.toBytes(exchange, buffer, null));
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void testInputStream() throws Exception {
+        Exchange exchange = createExchangeWithBody(null);
+        byte[] large = new byte[100 * 1024];
+        Arrays.fill(large, (byte) 7);
+
+        assertArrayEquals(large, NatsPayloads.toBytes(exchange, new ByteArrayInputStream(large), null));
+        assertArrayEquals(payload, NatsPayloads.toBytes(exchange, new ByteArrayInputStream(payload), null));
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        Exchange exchange = createExchangeWithBody(null);
+
+        assertArrayEquals("\u00e9t\u00e9".getBytes("ISO-8859-1"), NatsPayloads.toBytes(exchange, "\u00e9t\u00e9", Charset.forName("ISO-8859-1")));
+        assertArrayEquals("\u00e9t\u00e9".getBytes("UTF-8"), NatsPayloads.toBytes(exchange, "\u00e9t\u00e9", Charset.forName("UTF-8")));
+        exchange.setProperty(Exchange.CHARSET_NAME, "UTF-16");
+        assertArrayEquals("\u00e9t\u00e9".getBytes("UTF-16"), NatsPayloads.toBytes(exchange, "\u00e9t\u00e9", null));
+    }
+
+    @Test
+    public void testAllocationPerMessage() throws Exception {
+        final Exchange exchange = createExchangeWithBody(null);
+        final ByteBuffer buffer = ByteBuffer.wrap(payload);
+
+        long bytesPerMessage = allocatedPerMessage(new Body() {
+            public Object next() {
+                return payload;
+            }
+        }, exchange);
+        log.info("byte[] body: {} bytes allocated per message", bytesPerMessage);
+        assertTrue("byte[] bodies should not allocate, got " + bytesPerMessage, bytesPerMessage < 16);
+
+        bytesPerMessage = allocatedPerMessage(new Body() {
+            public Object next() {
+                return buffer;
+            }
+        }, exchange);
+        log.info("ByteBuffer body: {} bytes allocated per message", bytesPerMessage);
+        assertTrue("ByteBuffer bodies should not allocate, got " + bytesPerMessage, bytesPerMessage < 16);
+
+        // The stream itself accounts for a few dozen bytes, the rest is the payload copy
+        bytesPerMessage = allocatedPerMessage(new Body() {
+            public Object next() {
+                return new ByteArrayInputStream(payload);
+            }
+        }, exchange);
+        log.info("InputStream body: {} bytes allocated per message", bytesPerMessage);
+        assertTrue("InputStream bodies should be copied once, got " + bytesPerMessage, bytesPerMessage < PAYLOAD_SIZE + 256);
+    }
+
+    private interface Body {
+        Object next();
+    }
+
+    private static long allocatedPerMessage(Body body, Exchange exchange) throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        long threadId = Thread.currentThread().getId();
+        long sink = 0;
+        // Warm up, so that the JIT and the pooled buffer do not count
+        for (int i = 0; i < MESSAGES; i++) {
+            sink += NatsPayloads.toBytes(exchange, body.next(), null).length;
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MESSAGES; i++) {
+            sink += NatsPayloads.toBytes(exchange, body.next(), null).length;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(sink > 0);
+        return allocated / MESSAGES;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.impl.DefaultMessage;
+import org.junit.Test;
+
+public class NatsProducerBatchTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @EndpointInject(uri = "mock:other")
+    protected MockEndpoint mockOtherEndpoint;
+
+    @Test
+    public void testListBody() throws Exception {
+        mockResultEndpoint.expectedBodiesReceived("{Subject=batch;Reply=null;Payload=<a>}", "{Subject=batch;Reply=null;Payload=<b>}",
+            "{Subject=batch;Reply=null;Payload=<c>}");
+        template.sendBody("direct:send", Arrays.asList("a", "b", "c"));
+
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void testArrayBody() throws Exception {
+        mockResultEndpoint.expectedMessageCount(2);
+        template.sendBody("direct:send", new String[] {"a", "b"});
+
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Test(timeout = 5000)
+    public void testEmptyBatch() throws Exception {
+        mockResultEndpoint.expectedMessageCount(0);
+
+        // Completed right away, whatever the flush policy
+        template.sendBody("direct:send", new ArrayList<String>());
+        template.sendBody("direct:sendCount", new String[0]);
+
+        mockResultEndpoint.assertIsSatisfied(200);
+    }
+
+    @Test
+    public void testIterableBodyNotBatched() throws Exception {
+        mockResultEndpoint.expectedMessageCount(1);
+        template.sendBody("direct:send", Paths.get("a", "b", "c"));
+
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void testSubjectOverridePerElement() throws Exception {
+        mockResultEndpoint.expectedBodiesReceived("{Subject=batch;Reply=null;Payload=<a>}");
+        mockOtherEndpoint.expectedBodiesReceived("{Subject=batch.other;Reply=null;Payload=<b>}");
+
+        Message first = new DefaultMessage();
+        first.setBody("a");
+        Message second = new DefaultMessage();
+        second.setBody("b");
+        second.setHeader(NatsConstants.NATS_SUBJECT, "batch.other");
+        template.sendBody("direct:send", Arrays.asList(first, second));
+
+        assertMockEndpointsSatisfied();
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=batch");
+                from("direct:sendCount").to("nats://" + getNatsServers() + "?topic=batch&flushPolicy=COUNT&flushBatchSize=5");
+                from("nats://" + getNatsServers() + "?topic=batch").to(mockResultEndpoint);
+                from("nats://" + getNatsServers() + "?topic=batch.other").to(mockOtherEndpoint);
+            }
+        };
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.nats.connector.NatsConnector;
+import io.nats.connector.NatsFlushListener;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.EndpointInject;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+public class NatsProducerFlushPolicyTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    private final List<String> continuations = new CopyOnWriteArrayList<String>();
+
+    @Test
+    public void testCountFlushPolicy() throws Exception {
+        // The interval only bounds how long a partial batch waits, keep it out of the way
+        NatsProducer producer = createProducer("flushPolicy=count&flushBatchSize=5&flushInterval=60000000");
+        try {
+            long flushes = producer.getFlushes();
+            CountDownLatch completed = new CountDownLatch(5);
+            for (int i = 0; i < 4; i++) {
+                send(producer, "count" + i, completed);
+            }
+
+            assertFalse("A partial batch should wait", completed.await(200, TimeUnit.MILLISECONDS));
+            assertEquals(5, completed.getCount());
+            assertEquals(flushes, producer.getFlushes());
+
+            send(producer, "count4", completed);
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+            assertEquals("One flush per batch", flushes + 1, producer.getFlushes());
+        } finally {
+            producer.stop();
+        }
+    }
+
+    @Test
+    public void testIntervalFlushPolicy() throws Exception {
+        NatsProducer producer = createProducer("flushPolicy=interval&flushInterval=1000000");
+        try {
+            long flushes = producer.getFlushes();
+            CountDownLatch completed = new CountDownLatch(20);
+            for (int i = 0; i < 20; i++) {
+                send(producer, "interval" + i, completed);
+            }
+
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+            long intervalFlushes = producer.getFlushes() - flushes;
+            assertTrue("Expected the burst to share its flushes, got " + intervalFlushes, intervalFlushes >= 1 && intervalFlushes <= 2);
+        } finally {
+            producer.stop();
+        }
+    }
+
+    @Test
+    public void testEveryMessageFlushed() throws Exception {
+        NatsProducer producer = createProducer("flushPolicy=always");
+        try {
+            long flushes = producer.getFlushes();
+            CountDownLatch completed = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                send(producer, "always" + i, completed);
+            }
+
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+            assertEquals(flushes + 3, producer.getFlushes());
+        } finally {
+            producer.stop();
+        }
+    }
+
+    @Test
+    public void testCompletedOffTheFlusherThread() throws Exception {
+        mockResultEndpoint.expectedMessageCount(3);
+        for (int i = 0; i < 3; i++) {
+            template.sendBody("direct:continued", "continued" + i);
+        }
+
+        mockResultEndpoint.assertIsSatisfied();
+        assertEquals(3, continuations.size());
+        for (String thread : continuations) {
+            assertFalse(thread, thread.contains("NatsFlusher"));
+        }
+    }
+
+    @Test
+    public void testNotFlushedWhenNotRunning() throws Exception {
+        NatsConnector connector = new NatsConnector(null, new Properties(), LoggerFactory.getLogger(getClass()));
+        final AtomicReference<Exception> cause = new AtomicReference<Exception>();
+        connector.flushPublished(1, new NatsFlushListener() {
+            @Override
+            public void onFlush(Exception e) {
+                cause.set(e);
+            }
+        });
+        assertIsInstanceOf(IllegalStateException.class, cause.get());
+    }
+
+    private NatsProducer createProducer(String options) throws Exception {
+        NatsEndpoint endpoint = context.getEndpoint("nats://" + getNatsServers() + "?topic=flush&" + options, NatsEndpoint.class);
+        NatsProducer producer = (NatsProducer) endpoint.createProducer();
+        producer.start();
+        return producer;
+    }
+
+    private void send(NatsProducer producer, String body, final CountDownLatch completed) {
+        final Exchange exchange = createExchangeWithBody(body);
+        producer.process(exchange, new AsyncCallback() {
+            @Override
+            public void done(boolean doneSync) {
+                assertNull(exchange.getException());
+                completed.countDown();
+            }
+        });
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:continued").to("nats://" + getNatsServers() + "?topic=flush&flushPolicy=interval&flushInterval=500")
+                    .process(new Processor() {
+                        @Override
+                        public void process(Exchange exchange) throws Exception {
+                            continuations.add(Thread.currentThread().getName());
+                        }
+                    });
+                from("nats://" + getNatsServers() + "?topic=flush").to(mockResultEndpoint);
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsProducerPoolTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testThreadStripingKeepsOrder() throws Exception {
+        String[] expected = new String[20];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = "{Subject=pool;Reply=null;Payload=<pool" + i + ">}";
+        }
+        mockResultEndpoint.expectedBodiesReceived((Object[]) expected);
+
+        for (int i = 0; i < expected.length; i++) {
+            template.sendBody("direct:thread", "pool" + i);
+        }
+
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void testRoundRobinStriping() throws Exception {
+        mockResultEndpoint.expectedMessageCount(20);
+
+        for (int i = 0; i < 20; i++) {
+            template.sendBody("direct:roundRobin", "pool" + i);
+        }
+
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:thread").to("nats://" + getNatsServers() + "?topic=pool&poolSize=4");
+                from("direct:roundRobin").to("nats://" + getNatsServers() + "?topic=pool&poolSize=4&striping=round_robin");
+                from("nats://" + getNatsServers() + "?topic=pool").to(mockResultEndpoint);
+            }
+        };
+    }
+}
@@ -17,13 +17,10 @@
 package org.apache.camel.component.nats;
 
 import org.apache.camel.builder.RouteBuilder;
-import org.apache.camel.test.junit4.CamelTestSupport;
 import org.junit.BeforeClass;
-import org.junit.Ignore;
 import org.junit.Test;
 
-//@Ignore("Require a running Nats server")
-public class NatsProducerTest extends CamelTestSupport {
+public class NatsProducerTest extends NatsTestSupport {
 	  
     @Test
     public void sendTest() throws Exception {
@@ -36,7 +33,7 @@ public class NatsProducerTest extends CamelTestSupport {
         return new RouteBuilder() {
             @Override
             public void configure() throws Exception {
-                from("direct:send").to("nats://localhost:4222?topic=test");
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=test");
             }
         };
     }
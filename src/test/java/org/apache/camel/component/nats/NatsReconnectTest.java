@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NatsReconnectTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        // Disconnections and latency are only possible with the embedded server
+        Assume.assumeNotNull(getNatsServer());
+        super.setUp();
+    }
+
+    @Test
+    public void testReconnectAfterDisconnect() throws Exception {
+        mockResultEndpoint.expectedMessageCount(2);
+        template.sendBody("direct:send", "before");
+
+        NatsTestServer server = getNatsServer();
+        int subscriptions = server.getSubscriptionCount();
+        server.disconnectClients();
+
+        NatsConsumer consumer = (NatsConsumer) context.getRoute("receive").getConsumer();
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((consumer.getReconnects() == 0 || server.getSubscriptionCount() < subscriptions)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, consumer.getDisconnects());
+        assertEquals(1, consumer.getReconnects());
+
+        template.sendBody("direct:send", "after");
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        // Warm up the connections and the inbox subscription
+        template.requestBody("direct:request", "warm up");
+
+        getNatsServer().setLatency(50, TimeUnit.MILLISECONDS);
+        try {
+            long start = System.nanoTime();
+            assertNotNull(template.requestBody("direct:request", "ping"));
+            // The request delivered to the consumer and its reply both waited
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            getNatsServer().setLatency(0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=reconnect&reconnectTimeWait=100");
+                from("nats://" + getNatsServers() + "?topic=reconnect&reconnectTimeWait=100").routeId("receive")
+                    .to(mockResultEndpoint);
+                from("direct:request").to("nats://" + getNatsServers() + "?topic=latency&requestReply=true");
+                from("nats://" + getNatsServers() + "?topic=latency").transform(constant("pong"));
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import org.apache.camel.EndpointInject;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.junit.Test;
+
+public class NatsSharedConnectionTest extends NatsTestSupport {
+
+    @EndpointInject(uri = "mock:result")
+    protected MockEndpoint mockResultEndpoint;
+
+    @Test
+    public void testEndpointsShareConnections() throws Exception {
+        NatsComponent component = context.getComponent("nats", NatsComponent.class);
+        // Slot 0 of every endpoint plus slot 1 of the pooled consumer
+        assertEquals(2, component.getConnectionRegistry().getConnectionCount());
+
+        mockResultEndpoint.expectedMessageCount(2);
+        template.sendBody("direct:send", "shared");
+        mockResultEndpoint.assertIsSatisfied();
+
+        // The connections stay open as long as one endpoint uses them
+        context.stopRoute("pooled");
+        assertEquals(1, component.getConnectionRegistry().getConnectionCount());
+
+        mockResultEndpoint.reset();
+        mockResultEndpoint.expectedMessageCount(1);
+        template.sendBody("direct:send", "still shared");
+        mockResultEndpoint.assertIsSatisfied();
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:send").to("nats://" + getNatsServers() + "?topic=shared");
+                from("nats://" + getNatsServers() + "?topic=shared").to(mockResultEndpoint);
+                from("nats://" + getNatsServers() + "?topic=shared&poolSize=2&queueName=pooled").routeId("pooled").to(mockResultEndpoint);
+                from("nats://" + getNatsServers() + "?topic=other&sharedConnection=false").to(mockResultEndpoint);
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.junit.Test;
+
+public class NatsSlowConsumerTest extends NatsTestSupport {
+
+    private final AtomicInteger dropping = new AtomicInteger();
+    private final AtomicInteger unlimited = new AtomicInteger();
+
+    @Test
+    public void testDropsBeyondPendingLimit() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            template.sendBody("direct:drop", "drop" + i);
+        }
+        Thread.sleep(1500);
+
+        NatsConsumer consumer = consumer("drop");
+        assertTrue(consumer.getSlowConsumerCount() > 0);
+        assertTrue(consumer.getDroppedMessages() > 0);
+        assertEquals(50, dropping.get() + consumer.getDroppedMessages());
+    }
+
+    @Test
+    public void testNoLimit() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            template.sendBody("direct:unlimited", "unlimited" + i);
+        }
+        waitFor(unlimited, 50);
+
+        NatsConsumer consumer = consumer("unlimited");
+        assertEquals(0, consumer.getSlowConsumerCount());
+        assertEquals(0, consumer.getDroppedMessages());
+    }
+
+    private NatsConsumer consumer(String topic) {
+        return (NatsConsumer) context.getRoute(topic).getConsumer();
+    }
+
+    private static void waitFor(AtomicInteger counter, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && counter.get() < expected; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, counter.get());
+    }
+
+    private static Processor slowly(final AtomicInteger counter) {
+        return new Processor() {
+            @Override
+            public void process(Exchange exchange) throws Exception {
+                Thread.sleep(5);
+                counter.incrementAndGet();
+            }
+        };
+    }
+
+    @Override
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        return new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                from("direct:drop").to("nats://" + getNatsServers() + "?topic=slowdrop");
+                from("direct:unlimited").to("nats://" + getNatsServers() + "?topic=slowunlimited");
+                from("nats://" + getNatsServers() + "?topic=slowdrop&pendingMessageLimit=10").routeId("drop")
+                    .process(slowly(dropping));
+                from("nats://" + getNatsServers() + "?topic=slowunlimited&pendingMessageLimit=0").routeId("unlimited")
+                    .process(slowly(unlimited));
+            }
+        };
+    }
+}
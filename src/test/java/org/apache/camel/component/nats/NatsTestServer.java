@@ -0,0 +1,518 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-JVM stand-in for gnatsd speaking the core NATS text protocol (CONNECT, PUB, SUB
+ * with queue groups and wildcards, UNSUB with a maximum, MSG, PING/PONG), so that the
+ * tests do not need a server running on the machine.
+ *
+ * Everything happens on one selector thread. Tests may add a latency to what the server
+ * sends, lower the maximum payload, or disconnect the clients to exercise reconnections.
+ */
+public final class NatsTestServer implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NatsTestServer.class);
+
+    private static final byte[] PONG = bytes("PONG\r\n");
+    private static final byte[] OK = bytes("+OK\r\n");
+    private static final byte[] CRLF = bytes("\r\n");
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread thread;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private final List<Client> clients = new ArrayList<Client>();
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+    private final ArrayDeque<Delayed> delayed = new ArrayDeque<Delayed>();
+    private final Random random = new Random();
+
+    private volatile long latencyNanos;
+    private volatile int maxPayload = 1024 * 1024;
+    private volatile int maxClients = Integer.MAX_VALUE;
+    private volatile int clientCount;
+    private volatile int subscriptionCount;
+    private volatile boolean running = true;
+
+    private NatsTestServer(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this, "NatsTestServer[" + getPort() + "]");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     */
+    public static NatsTestServer start() throws IOException {
+        return start(0);
+    }
+
+    public static NatsTestServer start(int port) throws IOException {
+        NatsTestServer server = new NatsTestServer(port);
+        server.thread.start();
+        return server;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * The servers option of the endpoints connecting to this server
+     */
+    public String getServers() {
+        return "127.0.0.1:" + getPort();
+    }
+
+    /**
+     * Delays everything the server sends (messages, PONGs...) by the given time.
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * The max_payload announced to the clients connecting from now on, larger publications
+     * being refused as gnatsd does.
+     */
+    public void setMaxPayload(int maxPayload) {
+        this.maxPayload = maxPayload;
+    }
+
+    /**
+     * Number of clients connected at once, the next ones being refused as gnatsd does.
+     */
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptionCount;
+    }
+
+    /**
+     * Closes the connection of every client, the server still accepting them to reconnect.
+     */
+    public void disconnectClients() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Client client : new ArrayList<Client>(clients)) {
+                    close(client);
+                }
+                done.countDown();
+            }
+        });
+        done.await(5, TimeUnit.SECONDS);
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        stopped.await(5, TimeUnit.SECONDS);
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long timeout = 0;
+                if (!delayed.isEmpty()) {
+                    timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayed.peek().due - System.nanoTime()));
+                }
+                selector.select(timeout);
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                long now = System.nanoTime();
+                while (!delayed.isEmpty() && delayed.peek().due <= now) {
+                    Delayed frame = delayed.poll();
+                    write(frame.client, frame.data);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Client client = (Client) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                read(client);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                flush(client);
+                            }
+                        } catch (IOException e) {
+                            close(client);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("NATS test server failed", e);
+        } finally {
+            for (Client client : new ArrayList<Client>(clients)) {
+                close(client);
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("Closing the NATS test server", e);
+            }
+            stopped.countDown();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        clientCount = clients.size();
+        byte[] info = bytes("INFO {\"server_id\":\"camel-nats-test\",\"version\":\"0.9.4\",\"go\":\"go1.6\","
+                + "\"host\":\"127.0.0.1\",\"port\":" + getPort() + ",\"auth_required\":false,"
+                + "\"ssl_required\":false,\"max_payload\":" + maxPayload + "}\r\n");
+        if (clients.size() > maxClients) {
+            write(client, info);
+            write(client, bytes("-ERR 'maximum connections exceeded'\r\n"));
+            flushAndClose(client);
+            return;
+        }
+        send(client, info);
+    }
+
+    private void close(Client client) {
+        if (!clients.remove(client)) {
+            return;
+        }
+        clientCount = clients.size();
+        Iterator<Subscription> it = subscriptions.iterator();
+        while (it.hasNext()) {
+            if (it.next().client == client) {
+                it.remove();
+            }
+        }
+        subscriptionCount = subscriptions.size();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            logger.debug("Closing a NATS test client", e);
+        }
+    }
+
+    private void read(Client client) throws IOException {
+        ByteBuffer buffer = client.input;
+        if (!buffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            client.input = buffer = larger;
+        }
+        if (client.channel.read(buffer) < 0) {
+            close(client);
+            return;
+        }
+
+        buffer.flip();
+        while (clients.contains(client) && parse(client, buffer)) {
+            // One command at a time
+        }
+        buffer.compact();
+    }
+
+    /**
+     * Handles the next command of the buffer, false if it is not complete yet.
+     */
+    private boolean parse(Client client, ByteBuffer buffer) {
+        if (client.pendingPublish != null) {
+            String[] args = client.pendingPublish;
+            int size = Integer.parseInt(args[args.length - 1]);
+            if (buffer.remaining() < size + 2) {
+                return false;
+            }
+            byte[] payload = new byte[size];
+            buffer.get(payload);
+            buffer.position(buffer.position() + 2);
+            client.pendingPublish = null;
+            publish(args[1], args.length == 4 ? args[2] : null, payload);
+            ok(client);
+            return true;
+        }
+
+        int end = -1;
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return false;
+        }
+        byte[] line = new byte[end - buffer.position()];
+        buffer.get(line);
+        buffer.get();
+        String command = new String(line, StandardCharsets.UTF_8).trim();
+        if (command.isEmpty()) {
+            return true;
+        }
+
+        String[] args = command.split("\\s+");
+        String op = args[0].toUpperCase();
+        if (op.equals("PING")) {
+            send(client, PONG);
+        } else if (op.equals("PONG")) {
+            return true;
+        } else if (op.equals("CONNECT")) {
+            client.verbose = command.replace(" ", "").contains("\"verbose\":true");
+            ok(client);
+        } else if (op.equals("PUB") && (args.length == 3 || args.length == 4)) {
+            if (Integer.parseInt(args[args.length - 1]) > maxPayload) {
+                send(client, bytes("-ERR 'Maximum Payload Violation'\r\n"));
+                flushAndClose(client);
+                return false;
+            }
+            client.pendingPublish = args;
+        } else if (op.equals("SUB") && (args.length == 3 || args.length == 4)) {
+            subscriptions.add(new Subscription(client, args[1], args.length == 4 ? args[2] : null, args[args.length - 1]));
+            subscriptionCount = subscriptions.size();
+            ok(client);
+        } else if (op.equals("UNSUB") && (args.length == 2 || args.length == 3)) {
+            unsubscribe(client, args[1], args.length == 3 ? Long.parseLong(args[2]) : 0);
+            ok(client);
+        } else {
+            send(client, bytes("-ERR 'Unknown Protocol Operation'\r\n"));
+        }
+        return true;
+    }
+
+    private void unsubscribe(Client client, String sid, long max) {
+        Iterator<Subscription> it = subscriptions.iterator();
+        while (it.hasNext()) {
+            Subscription subscription = it.next();
+            if (subscription.client == client && subscription.sid.equals(sid)) {
+                if (max > 0 && subscription.delivered < max) {
+                    subscription.max = max;
+                } else {
+                    it.remove();
+                }
+            }
+        }
+        subscriptionCount = subscriptions.size();
+    }
+
+    private void publish(String subject, String replyTo, byte[] payload) {
+        String[] tokens = subject.split("\\.", -1);
+        List<Subscription> targets = new ArrayList<Subscription>();
+        Map<String, List<Subscription>> groups = new LinkedHashMap<String, List<Subscription>>();
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.matches(tokens)) {
+                continue;
+            }
+            if (subscription.queue == null) {
+                targets.add(subscription);
+            } else {
+                List<Subscription> members = groups.get(subscription.queue);
+                if (members == null) {
+                    members = new ArrayList<Subscription>();
+                    groups.put(subscription.queue, members);
+                }
+                members.add(subscription);
+            }
+        }
+        for (List<Subscription> members : groups.values()) {
+            targets.add(members.get(random.nextInt(members.size())));
+        }
+
+        for (Subscription subscription : targets) {
+            String header = "MSG " + subject + " " + subscription.sid + " "
+                    + (replyTo != null ? replyTo + " " : "") + payload.length + "\r\n";
+            byte[] head = bytes(header);
+            byte[] frame = new byte[head.length + payload.length + 2];
+            System.arraycopy(head, 0, frame, 0, head.length);
+            System.arraycopy(payload, 0, frame, head.length, payload.length);
+            System.arraycopy(CRLF, 0, frame, head.length + payload.length, 2);
+            send(subscription.client, frame);
+
+            if (++subscription.delivered == subscription.max) {
+                subscriptions.remove(subscription);
+                subscriptionCount = subscriptions.size();
+            }
+        }
+    }
+
+    private void ok(Client client) {
+        if (client.verbose) {
+            send(client, OK);
+        }
+    }
+
+    private void send(Client client, byte[] data) {
+        long latency = latencyNanos;
+        if (latency > 0 || !delayed.isEmpty()) {
+            // Keeps the order of what was sent before the latency changed
+            delayed.add(new Delayed(System.nanoTime() + latency, client, data));
+            return;
+        }
+        write(client, data);
+    }
+
+    private void write(Client client, byte[] data) {
+        if (!clients.contains(client)) {
+            return;
+        }
+        client.output.add(ByteBuffer.wrap(data));
+        try {
+            flush(client);
+        } catch (IOException e) {
+            close(client);
+        }
+    }
+
+    private void flush(Client client) throws IOException {
+        while (!client.output.isEmpty()) {
+            ByteBuffer buffer = client.output.peek();
+            client.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            client.output.poll();
+        }
+        if (client.key.isValid()) {
+            client.key.interestOps(client.output.isEmpty()
+                    ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void flushAndClose(Client client) {
+        try {
+            flush(client);
+        } catch (IOException e) {
+            logger.debug("Flushing a NATS test client", e);
+        }
+        close(client);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Client {
+        private final SocketChannel channel;
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+        private ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+        private SelectionKey key;
+        private boolean verbose;
+        private String[] pendingPublish;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private static final class Subscription {
+        private final Client client;
+        private final String[] tokens;
+        private final String queue;
+        private final String sid;
+        private long max;
+        private long delivered;
+
+        Subscription(Client client, String subject, String queue, String sid) {
+            this.client = client;
+            this.tokens = subject.split("\\.", -1);
+            this.queue = queue;
+            this.sid = sid;
+        }
+
+        boolean matches(String[] subject) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i].equals(">")) {
+                    return subject.length > i;
+                }
+                if (i >= subject.length || !(tokens[i].equals("*") || tokens[i].equals(subject[i]))) {
+                    return false;
+                }
+            }
+            return tokens.length == subject.length;
+        }
+    }
+
+    private static final class Delayed {
+        private final long due;
+        private final Client client;
+        private final byte[] data;
+
+        Delayed(long due, Client client, byte[] data) {
+            this.due = due;
+            this.client = client;
+            this.data = data;
+        }
+    }
+}
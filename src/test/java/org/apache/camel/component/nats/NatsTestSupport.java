@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.camel.component.nats;
+
+import org.apache.camel.test.junit4.CamelTestSupport;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Runs the tests of a class against an embedded {@link NatsTestServer}, or against the
+ * servers given with -Dnats.servers=host:port (a real gnatsd for instance).
+ */
+public abstract class NatsTestSupport extends CamelTestSupport {
+
+    private static NatsTestServer natsServer;
+    private static String natsServers;
+
+    @BeforeClass
+    public static void startNatsServer() throws Exception {
+        natsServers = System.getProperty("nats.servers");
+        if (natsServers == null) {
+            natsServer = NatsTestServer.start();
+            natsServers = natsServer.getServers();
+        }
+    }
+
+    @AfterClass
+    public static void stopNatsServer() throws Exception {
+        if (natsServer != null) {
+            natsServer.stop();
+        }
+        natsServer = null;
+    }
+
+    /**
+     * The servers of the NATS endpoints, as in nats://servers?topic=...
+     */
+    protected static String getNatsServers() {
+        return natsServers;
+    }
+
+    /**
+     * The embedded server, null when the tests run against external servers
+     */
+    protected static NatsTestServer getNatsServer() {
+        return natsServer;
+    }
+}